@@ -0,0 +1,178 @@
+package application;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+
+/**
+ * Command line entry point that renders many outline files to PNG or SVG without
+ * opening a window.
+ * <p>
+ * Each file is parsed, laid out and encoded as one task on a fixed-size thread pool,
+ * and timings are printed as files complete, followed by the overall throughput.
+ * Directories are expanded to the regular files they contain. Images are written
+ * next to their outline, or into the output directory if one is given. PNG images
+ * are compressed with the given deflate level, 0 to 9.
+ * 
+ * <pre>
+ * java -Djava.awt.headless=true application.BatchRenderer [-o outdir] [-t threads]
+ *      [-f png|svg] [-z level] horizontal|vertical file-or-directory...
+ * </pre>
+ */
+public class BatchRenderer {
+	
+	public static void main(String[] args) throws Exception {
+		System.setProperty("java.awt.headless", "true");
+		
+		File outputDirectory = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String format = "png";
+		int level = Deflater.DEFAULT_COMPRESSION;
+		int arg = 0;
+		while(arg < args.length && args[arg].startsWith("-")) {
+			if(args[arg].equals("-o") && arg + 1 < args.length)
+				outputDirectory = new File(args[arg + 1]);
+			else if(args[arg].equals("-t") && arg + 1 < args.length)
+				threads = Integer.parseInt(args[arg + 1]);
+			else if(args[arg].equals("-f") && arg + 1 < args.length)
+				format = args[arg + 1].toLowerCase();
+			else if(args[arg].equals("-z") && arg + 1 < args.length)
+				level = Integer.parseInt(args[arg + 1]);
+			else
+				usage();
+			arg += 2;
+		}
+		if(args.length - arg < 2 || !(format.equals("png") || format.equals("svg")))
+			usage();
+		// Files are already rendered in parallel, so each one is compressed on one thread.
+		final TreeExporter exporter = format.equals("svg") ? new SvgExporter() : new PngExporter(level, 1);
+		
+		final String orientation = args[arg++];
+		painter(orientation);
+		List<File> files = new ArrayList<File>();
+		for(; arg < args.length; arg++)
+			collect(new File(args[arg]), files);
+		if(outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs())
+			throw new IllegalArgumentException("Cannot create output directory " + outputDirectory);
+		
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		CompletionService<Result> results = new ExecutorCompletionService<Result>(pool);
+		long start = System.nanoTime();
+		for(File file : files)
+			results.submit(task(orientation, exporter, file, output(file, outputDirectory, format)));
+		
+		int failed = 0;
+		long nodes = 0;
+		for(int i = 0; i < files.size(); i++) {
+			Result result = results.take().get();
+			System.out.println(result);
+			if(result.error != null)
+				failed++;
+			else
+				nodes += result.nodes;
+		}
+		pool.shutdown();
+		
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.printf("%d files (%d failed), %,d nodes in %.2f s: %.1f files/s, %,.0f nodes/s on %d threads%n",
+				files.size(), failed, nodes, seconds, files.size() / seconds, nodes / seconds, threads);
+		if(failed > 0)
+			System.exit(1);
+	}
+	
+	private static void usage() {
+		System.err.println("Usage: java application.BatchRenderer [-o outdir] [-t threads] "
+				+ "[-f png|svg] [-z level] horizontal|vertical file-or-directory...");
+		System.exit(2);
+	}
+	
+	static TreePainter painter(String orientation) {
+		if(orientation.equalsIgnoreCase("horizontal"))
+			return new HorizontalOrientedTreeView();
+		if(orientation.equalsIgnoreCase("vertical"))
+			return new VerticalOrientedTreeView();
+		throw new IllegalArgumentException("Unknown orientation: " + orientation);
+	}
+	
+	private static void collect(File file, List<File> files) {
+		if(file.isDirectory()) {
+			File[] children = file.listFiles();
+			if(children != null) {
+				Arrays.sort(children);
+				for(File child : children) {
+					if(child.isFile())
+						files.add(child);
+				}
+			}
+		}
+		else {
+			files.add(file);
+		}
+	}
+	
+	private static File output(File input, File outputDirectory, String format) {
+		String name = input.getName();
+		int dot = name.lastIndexOf('.');
+		if(dot > 0)
+			name = name.substring(0, dot);
+		File directory = outputDirectory != null ? outputDirectory : input.getAbsoluteFile().getParentFile();
+		return new File(directory, name + "." + format);
+	}
+	
+	private static Callable<Result> task(final String orientation, final TreeExporter exporter, final File input,
+			final File output) {
+		return new Callable<Result>() {
+			@Override
+			public Result call() {
+				Result result = new Result(input);
+				try {
+					long t0 = System.nanoTime();
+					// Nothing is edited, so the outline is kept in array-backed storage.
+					CompactTree<String> tree = new OutlineParser().parseCompact(input.toPath());
+					long t1 = System.nanoTime();
+					TreePainter painter = painter(orientation);
+					LayoutResult layout = painter.layout(tree);
+					long t2 = System.nanoTime();
+					exporter.export(layout, output);
+					long t3 = System.nanoTime();
+					
+					result.nodes = layout.getNodeCount();
+					result.parseNanos = t1 - t0;
+					result.layoutNanos = t2 - t1;
+					result.renderNanos = t3 - t2;
+				} catch (Exception e) {
+					result.error = e;
+				}
+				return result;
+			}
+		};
+	}
+	
+	private static class Result {
+		final File file;
+		int nodes;
+		long parseNanos;
+		long layoutNanos;
+		long renderNanos;
+		Exception error;
+		
+		Result(File file) {
+			this.file = file;
+		}
+		
+		@Override
+		public String toString() {
+			if(error != null)
+				return file + ": FAILED " + error;
+			return String.format("%s: %,d nodes, parse %.1f ms, layout %.1f ms, render+encode %.1f ms",
+					file, nodes, parseNanos / 1e6, layoutNanos / 1e6, renderNanos / 1e6);
+		}
+	}
+}
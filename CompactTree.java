@@ -0,0 +1,300 @@
+package application;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * A tree stored as parallel primitive arrays instead of one object per node.
+ * Every node is addressed by an int handle; the root is always handle {@code 0}.
+ * <p>
+ * Children are kept as an intrusive singly linked list (first child / next sibling),
+ * so a node costs a handful of ints plus its label instead of a {@code Tree} object,
+ * an {@code ArrayList} and its backing array. The label-based methods of {@link Tree},
+ * such as {@link #addNode(Object, Object)} and {@link #getSuccessors(Object)}, work
+ * the same way here; like in {@code Tree}, the dictionary they look labels up in is
+ * only built the first time one of them is called.
+ * <p>
+ * A compact tree is laid out, drawn and exported as it is, see
+ * {@link TreeLayout#layout(IndexedTree)}. {@link OutlineParser#parseCompact} reads an
+ * outline straight into one.
+ *
+ * @param <T> the type of the labels stored in the tree
+ */
+public class CompactTree<T> implements IndexedTree<T> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] parent;
+	private int[] firstChild;
+	private int[] lastChild;
+	private int[] nextSibling;
+	private int[] depth;
+	private Object[] data;
+	private int size;
+
+	private int[] levelWidths = new int[DEFAULT_CAPACITY];
+	private int height;
+
+	private HashMap<T, Integer> locate;
+
+	public CompactTree(T rootData) {
+		this(rootData, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param rootData     the label of the root node
+	 * @param expectedSize the number of nodes to reserve room for
+	 */
+	public CompactTree(T rootData, int expectedSize) {
+		int capacity = Math.max(expectedSize, 1);
+		parent = new int[capacity];
+		firstChild = new int[capacity];
+		lastChild = new int[capacity];
+		nextSibling = new int[capacity];
+		depth = new int[capacity];
+		data = new Object[capacity];
+		append(NO_NODE, rootData);
+	}
+
+	@Override
+	public int getRoot() {
+		return 0;
+	}
+
+	/**
+	 * Adds a node under the node with the given handle.
+	 *
+	 * @return the handle of the new node
+	 */
+	public int addNode(int parentNode, T data) {
+		checkNode(parentNode);
+		return append(parentNode, data);
+	}
+
+	/**
+	 * Adds a node directly under the root.
+	 *
+	 * @return the handle of the new node
+	 */
+	public int addNode(T data) {
+		return append(0, data);
+	}
+
+	/*
+	 * Add a node under a specified root node.
+	 * If root node does not exist, it will be created under the root of the tree.
+	 */
+	public void addNode(T root, T data) {
+		Integer node = locate().get(root);
+		if(node != null)
+			append(node, data);
+		else
+			append(append(0, root), data);
+	}
+
+	private int append(int parentNode, T value) {
+		if(size == parent.length)
+			grow(size * 2);
+
+		int node = size++;
+		parent[node] = parentNode;
+		firstChild[node] = NO_NODE;
+		lastChild[node] = NO_NODE;
+		nextSibling[node] = NO_NODE;
+		data[node] = value;
+
+		int level = 0;
+		if(parentNode != NO_NODE) {
+			level = depth[parentNode] + 1;
+			if(firstChild[parentNode] == NO_NODE)
+				firstChild[parentNode] = node;
+			else
+				nextSibling[lastChild[parentNode]] = node;
+			lastChild[parentNode] = node;
+		}
+		depth[node] = level;
+
+		if(level == levelWidths.length)
+			levelWidths = Arrays.copyOf(levelWidths, level * 2);
+		levelWidths[level]++;
+		height = Math.max(height, level + 1);
+
+		if(locate != null)
+			locate.put(value, node);
+		return node;
+	}
+
+	/*
+	 * Builds the label dictionary on first use. A label held by several nodes maps
+	 * to the last of them.
+	 */
+	@SuppressWarnings("unchecked")
+	private HashMap<T, Integer> locate() {
+		if(locate == null) {
+			locate = new HashMap<T, Integer>(Math.max(16, (int)(size / 0.75f) + 1));
+			for(int node = 0; node < size; node++)
+				locate.put((T) data[node], node);
+		}
+		return locate;
+	}
+
+	private void grow(int capacity) {
+		parent = Arrays.copyOf(parent, capacity);
+		firstChild = Arrays.copyOf(firstChild, capacity);
+		lastChild = Arrays.copyOf(lastChild, capacity);
+		nextSibling = Arrays.copyOf(nextSibling, capacity);
+		depth = Arrays.copyOf(depth, capacity);
+		data = Arrays.copyOf(data, capacity);
+	}
+
+	private void checkNode(int node) {
+		if(node < 0 || node >= size)
+			throw new IndexOutOfBoundsException("No node with handle " + node);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public T getData(int node) {
+		checkNode(node);
+		return (T) data[node];
+	}
+
+	/**
+	 * Replaces the label of a node.
+	 */
+	public void setData(int node, T value) {
+		checkNode(node);
+		if(locate != null) {
+			Integer holder = locate.get(data[node]);
+			if(holder != null && holder == node)
+				locate.remove(data[node]);
+			locate.put(value, node);
+		}
+		data[node] = value;
+	}
+
+	public int getParent(int node) {
+		checkNode(node);
+		return parent[node];
+	}
+
+	@Override
+	public int getFirstChild(int node) {
+		checkNode(node);
+		return firstChild[node];
+	}
+
+	@Override
+	public int getNextSibling(int node) {
+		checkNode(node);
+		return nextSibling[node];
+	}
+
+	public int getDepth(int node) {
+		checkNode(node);
+		return depth[node];
+	}
+
+	/**
+	 * @return the handle of the node holding the given value, or {@link #NO_NODE}
+	 */
+	public int getNode(T element) {
+		Integer node = locate().get(element);
+		return node == null ? NO_NODE : node;
+	}
+
+	public boolean hasChildren(int node) {
+		checkNode(node);
+		return firstChild[node] != NO_NODE;
+	}
+
+	/**
+	 * Returns a list of the data from each child node of the
+	 * root node.
+	 *
+	 * @param  root the value of the head of the subtree to retrieve
+	 * @return 		a list of the values of the immediate children of the root node
+	 */
+	@SuppressWarnings("unchecked")
+	public List<T> getSuccessors(T root) {
+		List<T> successors = new ArrayList<T>();
+		Integer node = locate().get(root);
+		if(node != null) {
+			for(int c = firstChild[node]; c != NO_NODE; c = nextSibling[c])
+				successors.add((T) data[c]);
+		}
+		return successors;
+	}
+
+	/**
+	 * @return the handles of the immediate children of the node, in insertion order
+	 */
+	public int[] getChildNodes(int node) {
+		checkNode(node);
+		int count = 0;
+		for(int c = firstChild[node]; c != NO_NODE; c = nextSibling[c])
+			count++;
+		int[] children = new int[count];
+		int i = 0;
+		for(int c = firstChild[node]; c != NO_NODE; c = nextSibling[c])
+			children[i++] = c;
+		return children;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/*
+	 * Returns the highest number of nodes in a level of the tree
+	 */
+	public int maxWidth() {
+		int maxWidth = 1;
+		for(int level = 0; level < height; level++)
+			maxWidth = Math.max(maxWidth, levelWidths[level]);
+		return maxWidth;
+	}
+
+	/*
+	 * Returns the number of levels in the tree
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Copies an object tree into compact storage, preserving child order.
+	 */
+	public static <T> CompactTree<T> fromTree(Tree<T> tree) {
+		CompactTree<T> compact = new CompactTree<T>(tree.getData());
+		ArrayDeque<Tree<T>> pending = new ArrayDeque<Tree<T>>();
+		ArrayDeque<Integer> handles = new ArrayDeque<Integer>();
+		pending.add(tree);
+		handles.add(0);
+		while(!pending.isEmpty()) {
+			Tree<T> t = pending.poll();
+			int node = handles.poll();
+			for(Tree<T> child : t.getChildNodes()) {
+				pending.add(child);
+				handles.add(compact.append(node, child.getData()));
+			}
+		}
+		return compact;
+	}
+
+	/**
+	 * Builds the equivalent object tree, for callers that need {@code Tree} nodes.
+	 */
+	@SuppressWarnings("unchecked")
+	public Tree<T> toTree() {
+		List<Tree<T>> nodes = new ArrayList<Tree<T>>(size);
+		nodes.add(new Tree<T>((T) data[0]));
+		// Handles are assigned in insertion order, so a parent always precedes its children.
+		for(int node = 1; node < size; node++)
+			nodes.add(nodes.get(parent[node]).addNode((T) data[node]));
+		return nodes.get(0);
+	}
+}
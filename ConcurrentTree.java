@@ -0,0 +1,368 @@
+package application;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A tree that one or more threads can add nodes to and remove nodes from while other
+ * threads read it, such as a render thread laying out and painting what an ingest
+ * thread has loaded so far.
+ * <p>
+ * Nodes are addressed by int handles; the root is handle {@code 0} and handles are
+ * never reused. Readers never take a lock: they call
+ * {@link #snapshot()} and read the returned {@link Snapshot}, which keeps showing the
+ * tree as it was at that moment however it is edited afterwards. Taking a snapshot
+ * costs one volatile read and a small object, not a copy of the tree.
+ * <p>
+ * This works because storage is append-only. A node is never moved or unlinked; an
+ * added node gets the next handle and is linked after its last sibling, and a removed
+ * node is only stamped with the number of the removal. A snapshot knows how many nodes
+ * there were and how many removals had happened, so it ignores nodes with a higher
+ * handle and removals with a higher number. Removed nodes keep their storage.
+ * <p>
+ * Every writer takes the same lock, so edits from several threads run one at a time;
+ * each holds it for the few array stores of one edit and never waits for readers. A
+ * writer with many edits to make, such as a parser, wraps them in
+ * {@link #beginBatch()} and {@link #endBatch()} to take the lock once, and readers
+ * see the whole batch or none of it.
+ * <p>
+ * A snapshot is an {@link IndexedTree}, so {@link TreeLayout#layout(IndexedTree)}
+ * lays it out directly on the reading thread. {@link OutlineFollower} parses on its
+ * reader thread into one of these and copies new nodes into the {@link Tree} of the
+ * view from snapshots.
+ *
+ * @param <T> the type of the labels stored in the tree
+ */
+public class ConcurrentTree<T> {
+
+	public static final int NO_NODE = IndexedTree.NO_NODE;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	// Written under the lock only.
+	private int[] lastChild;
+	private int size;
+	private int removals;
+	private int batchDepth;
+
+	private volatile Storage storage;
+	// The removal count in the high half and the node count in the low half, published
+	// together so that a snapshot sees both as of the same edit.
+	private volatile long stamp;
+
+	public ConcurrentTree(T rootData) {
+		this(rootData, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param rootData     the label of the root node
+	 * @param expectedSize the number of nodes to reserve room for
+	 */
+	public ConcurrentTree(T rootData, int expectedSize) {
+		int capacity = Math.max(expectedSize, 1);
+		Storage s = new Storage(capacity);
+		s.parent[0] = NO_NODE;
+		s.firstChild[0] = NO_NODE;
+		s.nextSibling[0] = NO_NODE;
+		s.data[0] = rootData;
+		lastChild = new int[capacity];
+		lastChild[0] = NO_NODE;
+		size = 1;
+		storage = s;
+		stamp = 1;
+	}
+
+	public int getRoot() {
+		return 0;
+	}
+
+	/**
+	 * Adds a node under the node with the given handle, after its other children.
+	 *
+	 * @return the handle of the new node
+	 * @throws IllegalArgumentException if the parent has been removed
+	 */
+	public int addNode(int parentNode, T data) {
+		lock.lock();
+		try {
+			checkNode(parentNode);
+			Storage s = storage;
+			if(s.removedAt[parentNode] != 0)
+				throw new IllegalArgumentException("Node " + parentNode + " has been removed");
+			if(size == s.parent.length)
+				s = grow(size * 2);
+
+			int node = size;
+			s.parent[node] = parentNode;
+			s.firstChild[node] = NO_NODE;
+			s.nextSibling[node] = NO_NODE;
+			s.data[node] = data;
+			lastChild[node] = NO_NODE;
+			if(lastChild[parentNode] == NO_NODE)
+				s.firstChild[parentNode] = node;
+			else
+				s.nextSibling[lastChild[parentNode]] = node;
+			lastChild[parentNode] = node;
+
+			size++;
+			publish();
+			return node;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the label of a node. Labels are not versioned: snapshots taken before
+	 * show the new label as well.
+	 */
+	public void setData(int node, T data) {
+		lock.lock();
+		try {
+			checkNode(node);
+			storage.data[node] = data;
+			publish();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Removes a node and every node below it. Removing the root only removes its
+	 * descendants. Removing a node that is already gone does nothing.
+	 */
+	public void remove(int node) {
+		lock.lock();
+		try {
+			checkNode(node);
+			Storage s = storage;
+			if(s.removedAt[node] != 0)
+				return;
+			int removal = ++removals;
+			ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+			if(node == 0) {
+				for(int c = s.firstChild[0]; c != NO_NODE; c = s.nextSibling[c])
+					pending.push(c);
+			}
+			else
+				pending.push(node);
+			while(!pending.isEmpty()) {
+				int n = pending.pop();
+				if(s.removedAt[n] != 0)
+					continue;
+				s.removedAt[n] = removal;
+				for(int c = s.firstChild[n]; c != NO_NODE; c = s.nextSibling[c])
+					pending.push(c);
+			}
+			publish();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Starts a batch of edits by the calling thread. Other writers wait until the
+	 * batch ends, and snapshots taken meanwhile show none of its edits. Batches may
+	 * be nested; every call must be matched by a call to {@link #endBatch()}.
+	 */
+	public void beginBatch() {
+		lock.lock();
+		batchDepth++;
+	}
+
+	/**
+	 * Ends a batch of edits and shows them to snapshots taken from now on.
+	 *
+	 * @throws IllegalMonitorStateException if the calling thread has not begun a batch
+	 */
+	public void endBatch() {
+		if(!lock.isHeldByCurrentThread() || batchDepth == 0)
+			throw new IllegalMonitorStateException("No batch begun by this thread");
+		if(--batchDepth == 0)
+			publish();
+		lock.unlock();
+	}
+
+	/**
+	 * @return the tree as it is now, unaffected by later edits
+	 */
+	public Snapshot<T> snapshot() {
+		long current = stamp;
+		return new Snapshot<T>(storage, (int) current, (int) (current >>> 32));
+	}
+
+	/**
+	 * @return the number of handles given out, including those of removed nodes
+	 */
+	public int size() {
+		return (int) stamp;
+	}
+
+	/*
+	 * The volatile write also makes the array stores before it visible to readers
+	 * that read the stamp.
+	 */
+	private void publish() {
+		if(batchDepth == 0)
+			stamp = (long) removals << 32 | size;
+	}
+
+	private void checkNode(int node) {
+		if(node < 0 || node >= size)
+			throw new IndexOutOfBoundsException("No node with handle " + node);
+	}
+
+	/*
+	 * Readers of older snapshots keep the old arrays, which hold everything those
+	 * snapshots can see.
+	 */
+	private Storage grow(int capacity) {
+		Storage s = storage;
+		Storage larger = new Storage(capacity);
+		System.arraycopy(s.parent, 0, larger.parent, 0, size);
+		System.arraycopy(s.firstChild, 0, larger.firstChild, 0, size);
+		System.arraycopy(s.nextSibling, 0, larger.nextSibling, 0, size);
+		System.arraycopy(s.removedAt, 0, larger.removedAt, 0, size);
+		System.arraycopy(s.data, 0, larger.data, 0, size);
+		lastChild = Arrays.copyOf(lastChild, capacity);
+		storage = larger;
+		return larger;
+	}
+
+	/*
+	 * removedAt[n] is the number of the removal that took node n out, or 0.
+	 */
+	private static final class Storage {
+		final int[] parent;
+		final int[] firstChild;
+		final int[] nextSibling;
+		final int[] removedAt;
+		final Object[] data;
+
+		Storage(int capacity) {
+			parent = new int[capacity];
+			firstChild = new int[capacity];
+			nextSibling = new int[capacity];
+			removedAt = new int[capacity];
+			data = new Object[capacity];
+		}
+	}
+
+	/**
+	 * The tree as it was when the snapshot was taken. Snapshots may be read from any
+	 * thread and are never changed by edits to the tree.
+	 */
+	public static final class Snapshot<T> implements IndexedTree<T> {
+		private final Storage storage;
+		private final int size;
+		private final int removals;
+
+		Snapshot(Storage storage, int size, int removals) {
+			this.storage = storage;
+			this.size = size;
+			this.removals = removals;
+		}
+
+		@Override
+		public int getRoot() {
+			return 0;
+		}
+
+		/**
+		 * @return the number of handles the snapshot covers, including those of
+		 *         removed nodes
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * @return whether the node was in the tree when the snapshot was taken
+		 */
+		public boolean contains(int node) {
+			if(node < 0 || node >= size)
+				return false;
+			int removedAt = storage.removedAt[node];
+			return removedAt == 0 || removedAt > removals;
+		}
+
+		private void checkNode(int node) {
+			if(!contains(node))
+				throw new IndexOutOfBoundsException("No node with handle " + node + " in snapshot");
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T getData(int node) {
+			checkNode(node);
+			return (T) storage.data[node];
+		}
+
+		public int getParent(int node) {
+			checkNode(node);
+			return storage.parent[node];
+		}
+
+		@Override
+		public int getFirstChild(int node) {
+			checkNode(node);
+			return skipRemoved(storage.firstChild[node]);
+		}
+
+		@Override
+		public int getNextSibling(int node) {
+			checkNode(node);
+			return skipRemoved(storage.nextSibling[node]);
+		}
+
+		/*
+		 * Siblings are linked in handle order, so the first one past the snapshot
+		 * ends the list.
+		 */
+		private int skipRemoved(int node) {
+			while(node != NO_NODE && node < size && !contains(node))
+				node = storage.nextSibling[node];
+			return node < size ? node : NO_NODE;
+		}
+
+		public boolean hasChildren(int node) {
+			return getFirstChild(node) != NO_NODE;
+		}
+
+		/**
+		 * @return the handles of the immediate children of the node, in insertion order
+		 */
+		public int[] getChildNodes(int node) {
+			int count = 0;
+			for(int c = getFirstChild(node); c != NO_NODE; c = getNextSibling(c))
+				count++;
+			int[] children = new int[count];
+			int i = 0;
+			for(int c = getFirstChild(node); c != NO_NODE; c = getNextSibling(c))
+				children[i++] = c;
+			return children;
+		}
+
+		/**
+		 * Builds the equivalent object tree, for readers that need {@code Tree}
+		 * nodes. Layouts do not: a snapshot can be laid out as it is.
+		 */
+		public Tree<T> toTree() {
+			Tree<T> tree = new Tree<T>(getData(0));
+			ArrayDeque<Tree<T>> pending = new ArrayDeque<Tree<T>>();
+			ArrayDeque<Integer> handles = new ArrayDeque<Integer>();
+			pending.add(tree);
+			handles.add(0);
+			while(!pending.isEmpty()) {
+				Tree<T> t = pending.poll();
+				int node = handles.poll();
+				for(int c = getFirstChild(node); c != NO_NODE; c = getNextSibling(c)) {
+					pending.add(t.addNode(getData(c)));
+					handles.add(c);
+				}
+			}
+			return tree;
+		}
+	}
+}
@@ -0,0 +1,100 @@
+package application;
+
+/**
+ * The parts of a canvas that need to be repainted, as a small set of rectangles.
+ * Once the set is full, a new rectangle is merged into the one it enlarges least,
+ * so the region stays cheap to paint however many nodes changed.
+ */
+public class DirtyRegion {
+
+	private static final int MAX_RECTS = 32;
+
+	// minX, minY, maxX, maxY of every rectangle
+	private final double[] rects = new double[MAX_RECTS * 4];
+	private int count;
+	private boolean all;
+
+	/**
+	 * Adds a rectangle given by two opposite corners.
+	 */
+	public void add(double x1, double y1, double x2, double y2) {
+		if(all || Double.isNaN(x1 + y1 + x2 + y2))
+			return;
+		double minX = Math.min(x1, x2);
+		double minY = Math.min(y1, y2);
+		double maxX = Math.max(x1, x2);
+		double maxY = Math.max(y1, y2);
+		if(count < MAX_RECTS) {
+			set(count++, minX, minY, maxX, maxY);
+			return;
+		}
+
+		int best = 0;
+		double bestGrowth = Double.POSITIVE_INFINITY;
+		for(int i = 0; i < count; i++) {
+			int r = i * 4;
+			double area = (rects[r + 2] - rects[r]) * (rects[r + 3] - rects[r + 1]);
+			double merged = (Math.max(maxX, rects[r + 2]) - Math.min(minX, rects[r]))
+					* (Math.max(maxY, rects[r + 3]) - Math.min(minY, rects[r + 1]));
+			if(merged - area < bestGrowth) {
+				bestGrowth = merged - area;
+				best = i;
+			}
+		}
+		int r = best * 4;
+		set(best, Math.min(minX, rects[r]), Math.min(minY, rects[r + 1]),
+				Math.max(maxX, rects[r + 2]), Math.max(maxY, rects[r + 3]));
+	}
+
+	private void set(int i, double minX, double minY, double maxX, double maxY) {
+		int r = i * 4;
+		rects[r] = minX;
+		rects[r + 1] = minY;
+		rects[r + 2] = maxX;
+		rects[r + 3] = maxY;
+	}
+
+	/**
+	 * Marks the whole canvas as dirty.
+	 */
+	public void addAll() {
+		all = true;
+		count = 0;
+	}
+
+	public boolean isAll() {
+		return all;
+	}
+
+	public boolean isEmpty() {
+		return !all && count == 0;
+	}
+
+	/**
+	 * @return the number of rectangles, which is 0 when the whole canvas is dirty
+	 */
+	public int size() {
+		return count;
+	}
+
+	public double getX(int i) {
+		return rects[i * 4];
+	}
+
+	public double getY(int i) {
+		return rects[i * 4 + 1];
+	}
+
+	public double getWidth(int i) {
+		return rects[i * 4 + 2] - rects[i * 4];
+	}
+
+	public double getHeight(int i) {
+		return rects[i * 4 + 3] - rects[i * 4 + 1];
+	}
+
+	public void clear() {
+		count = 0;
+		all = false;
+	}
+}
@@ -0,0 +1,124 @@
+package application;
+
+import java.awt.Graphics2D;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how long it takes from an edit of a large tree until the affected part
+ * of a window-sized view is repainted, using {@link LiveLayout}, and compares it
+ * with laying out the whole tree again.
+ * <p>
+ * Each edit adds a leaf, removes a leaf added earlier, or renames a node, and is
+ * followed by an update and a repaint of the dirty rectangles inside a fixed
+ * viewport, the same steps {@link TreeViewport} takes once per pulse.
+ * <p>
+ * Usage: {@code java application.EditLatency [nodeCount] [edits]}
+ */
+public class EditLatency {
+
+	private static final int VIEW_WIDTH = (int) TreeView.MAX_WINDOW_WIDTH;
+	private static final int VIEW_HEIGHT = (int) TreeView.MAX_WINDOW_HEIGHT;
+	private static final LayoutPainter PAINTER = new LayoutPainter();
+
+	public static void main(String[] args) {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+		int edits = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+		Random random = new Random(42L);
+
+		List<Tree<String>> all = new ArrayList<Tree<String>>(nodes);
+		all.add(new Tree<String>("0"));
+		for(int i = 1; i < nodes; i++)
+			all.add(all.get(random.nextInt(i)).addNode(Integer.toString(i)));
+		Tree<String> tree = all.get(0);
+
+		long[] full = new long[5];
+		for(int i = 0; i < full.length; i++) {
+			long start = System.nanoTime();
+			newEngine().layout(tree);
+			full[i] = System.nanoTime() - start;
+		}
+
+		LiveLayout live = new LiveLayout(tree, newEngine());
+		BufferedImage image = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = image.createGraphics();
+		TreeSurface surface = new Graphics2DSurface(g);
+
+		// The view is kept on the middle of the tree, where most edits are visible.
+		double x = Math.max(0, live.getResult().getCanvasWidth() / 2 - VIEW_WIDTH / 2);
+		double y = 0;
+
+		List<Tree<String>> added = new ArrayList<Tree<String>>();
+		long[] latency = new long[edits];
+		int fullUpdates = 0;
+		int next = nodes;
+		for(int i = 0; i < edits; i++) {
+			long start = System.nanoTime();
+			int op = random.nextInt(3);
+			if(op == 0 || added.isEmpty()) {
+				Tree<String> node = all.get(random.nextInt(all.size())).addNode(Integer.toString(next++));
+				added.add(node);
+			}
+			else if(op == 1) {
+				Tree<String> node = added.remove(random.nextInt(added.size()));
+				node.remove();
+			}
+			else {
+				Tree<String> node = all.get(random.nextInt(all.size()));
+				node.setData(node.getData());
+			}
+
+			DirtyRegion dirty = live.update();
+			if(dirty.isAll())
+				fullUpdates++;
+			repaint(g, surface, live, dirty, x, y);
+			latency[i] = System.nanoTime() - start;
+		}
+		g.dispose();
+
+		Arrays.sort(full);
+		Arrays.sort(latency);
+		System.out.printf("nodes:              %,d%n", nodes);
+		System.out.printf("edits:              %,d (%,d repainted the whole view)%n", edits, fullUpdates);
+		System.out.printf("full layout:        %.3f ms (median)%n", full[full.length / 2] / 1e6);
+		System.out.printf("edit to repaint:    %.3f ms (median), %.3f ms (p99)%n",
+				latency[edits / 2] / 1e6, latency[edits * 99 / 100] / 1e6);
+	}
+
+	private static TreeLayout newEngine() {
+		return new TreeLayout(Orientation.HORIZONTAL, TreePainter.RECT_WIDTH, TreePainter.RECT_HEIGHT,
+				10, 30, 25, 20);
+	}
+
+	private static void repaint(Graphics2D g, TreeSurface surface, LiveLayout live, DirtyRegion dirty,
+			double x, double y) {
+		LayoutResult result = live.getResult();
+		LayoutIndex index = live.getIndex();
+		if(dirty.isAll()) {
+			g.clearRect(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+			g.translate(-x, -y);
+			PAINTER.paint(surface, result, index, x, y, VIEW_WIDTH, VIEW_HEIGHT);
+			g.translate(x, y);
+			return;
+		}
+		// Padded, because lines are a little wider than their geometry.
+		for(int i = 0; i < dirty.size(); i++) {
+			double x0 = Math.max(x, dirty.getX(i) - 2);
+			double y0 = Math.max(y, dirty.getY(i) - 2);
+			double x1 = Math.min(x + VIEW_WIDTH, dirty.getX(i) + dirty.getWidth(i) + 2);
+			double y1 = Math.min(y + VIEW_HEIGHT, dirty.getY(i) + dirty.getHeight(i) + 2);
+			if(x0 >= x1 || y0 >= y1)
+				continue;
+			Graphics2D clipped = (Graphics2D) g.create();
+			clipped.translate(-x, -y);
+			clipped.clip(new Rectangle2D.Double(x0, y0, x1 - x0, y1 - y0));
+			clipped.clearRect((int) x0, (int) y0, (int) Math.ceil(x1 - x0), (int) Math.ceil(y1 - y0));
+			PAINTER.paint(new Graphics2DSurface(clipped), result, index, x0, y0, x1 - x0, y1 - y0);
+			clipped.dispose();
+		}
+	}
+}
@@ -0,0 +1,114 @@
+package application;
+
+import java.util.ArrayDeque;
+
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.concurrent.WorkerStateEvent;
+import javafx.event.ActionEvent;
+import javafx.event.EventHandler;
+import javafx.geometry.Insets;
+import javafx.geometry.Pos;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
+import javafx.scene.layout.HBox;
+
+/**
+ * A status line that shows the progress of the running {@link ExportTask}, how
+ * many are waiting behind it, and a button to cancel it. It stays hidden until the
+ * first export is tracked.
+ */
+public class ExportStatus extends HBox {
+
+	private final ProgressBar bar = new ProgressBar(0);
+	private final Label message = new Label();
+	private final Button cancel = new Button("Cancel");
+	private final ArrayDeque<ExportTask> waiting = new ArrayDeque<ExportTask>();
+	private ExportTask running;
+
+	public ExportStatus() {
+		super(8);
+		setAlignment(Pos.CENTER_LEFT);
+		setPadding(new Insets(4, 8, 4, 8));
+		getChildren().addAll(bar, message, cancel);
+		cancel.setDisable(true);
+		cancel.setOnAction(new EventHandler<ActionEvent>() {
+			@Override
+			public void handle(ActionEvent event) {
+				if(running != null)
+					running.cancel();
+			}
+		});
+		setVisible(false);
+		setManaged(false);
+	}
+
+	/**
+	 * Shows the progress of a task once it starts. Must be called on the JavaFX
+	 * application thread, before the task can finish.
+	 */
+	public void track(final ExportTask task) {
+		waiting.add(task);
+		setVisible(true);
+		setManaged(true);
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_RUNNING, new EventHandler<WorkerStateEvent>() {
+			@Override
+			public void handle(WorkerStateEvent event) {
+				started(task);
+			}
+		});
+		EventHandler<WorkerStateEvent> done = new EventHandler<WorkerStateEvent>() {
+			@Override
+			public void handle(WorkerStateEvent event) {
+				finished(task);
+			}
+		};
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_SUCCEEDED, done);
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_FAILED, done);
+		task.addEventHandler(WorkerStateEvent.WORKER_STATE_CANCELLED, done);
+		if(running == null)
+			message.setText(task.getMessage() + queued());
+	}
+
+	private void started(final ExportTask task) {
+		waiting.remove(task);
+		running = task;
+		bar.progressProperty().bind(task.progressProperty());
+		message.setText(task.getMessage() + queued());
+		task.messageProperty().addListener(new ChangeListener<String>() {
+			@Override
+			public void changed(ObservableValue<? extends String> value, String before, String after) {
+				if(running == task)
+					message.setText(after + queued());
+			}
+		});
+		cancel.setDisable(false);
+	}
+
+	private void finished(ExportTask task) {
+		waiting.remove(task);
+		if(task != running)
+			return;
+		running = null;
+		bar.progressProperty().unbind();
+		cancel.setDisable(true);
+		switch(task.getState()) {
+		case SUCCEEDED:
+			bar.setProgress(1);
+			message.setText("Saved " + task.getFile() + queued());
+			break;
+		case FAILED:
+			bar.setProgress(0);
+			message.setText("Export of " + task.getFile().getName() + " failed: " + task.getException() + queued());
+			break;
+		default:
+			bar.setProgress(0);
+			message.setText("Export of " + task.getFile().getName() + " cancelled" + queued());
+		}
+	}
+
+	private String queued() {
+		return waiting.isEmpty() ? "" : " (" + waiting.size() + " more queued)";
+	}
+}
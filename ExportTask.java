@@ -0,0 +1,77 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javafx.concurrent.Task;
+
+/**
+ * Exports a layout in the background, so the window stays responsive while a large
+ * image is encoded.
+ * <p>
+ * Tasks given to {@link #queue(ExportTask)} run one after another on a single
+ * thread; PNG exports still compress on several threads each. Cancelling a task
+ * interrupts the exporter, and a file that was not finished is deleted.
+ */
+public class ExportTask extends Task<File> {
+
+	private static final ExecutorService QUEUE = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "tree-export");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+
+	private final LayoutResult layout;
+	private final File file;
+	private final TreeExporter exporter;
+
+	/**
+	 * @param layout a layout that does not change anymore, such as a
+	 *               {@link LayoutResult#copy() copy}
+	 */
+	public ExportTask(LayoutResult layout, File file, TreeExporter exporter) {
+		this.layout = layout;
+		this.file = file;
+		this.exporter = exporter;
+		updateTitle(file.getName());
+		updateMessage("Waiting to export " + file.getName());
+	}
+
+	/**
+	 * Runs a task after the ones queued before it.
+	 *
+	 * @return the task
+	 */
+	public static ExportTask queue(ExportTask task) {
+		QUEUE.execute(task);
+		return task;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	@Override
+	protected File call() throws IOException {
+		updateMessage("Exporting " + file.getName());
+		try {
+			exporter.export(layout, file, new TreeExporter.Progress() {
+				@Override
+				public void update(long done, long total) {
+					updateProgress(done, total);
+				}
+			});
+		} catch (IOException | RuntimeException e) {
+			file.delete();
+			throw e;
+		}
+		updateMessage("Saved " + file.getName());
+		return file;
+	}
+}
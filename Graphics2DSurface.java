@@ -0,0 +1,178 @@
+package application;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * Draws on an AWT {@link Graphics2D}, typically backed by an offscreen image.
+ * Used where no JavaFX toolkit is running, such as headless batch rendering.
+ */
+public class Graphics2DSurface implements TreeSurface {
+	
+	// Lines longer than this, across plus down, are stroked as part of a path.
+	private static final double PATH_LENGTH = 16384;
+	
+	private final Graphics2D g;
+	private final Line2D.Double line = new Line2D.Double();
+	private final Rectangle2D.Double rect = new Rectangle2D.Double();
+	// Reset for every batch, keeping the room it has grown to.
+	private final Path2D.Double path = new Path2D.Double();
+	private BasicStroke stroke;
+	private LabelMetrics metrics;
+	// Set by setClip; lines are cut to it before they are drawn.
+	private Rectangle2D.Double clip;
+	// The part of the line being cut that is kept, from 0 to 1.
+	private final double[] kept = new double[2];
+	
+	public Graphics2DSurface(Graphics2D g) {
+		this.g = g;
+		g.setColor(Color.BLACK);
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+		// Text is measured with fractional advances by LabelMetrics.
+		g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, RenderingHints.VALUE_FRACTIONALMETRICS_ON);
+	}
+	
+	/**
+	 * Limits drawing to a rectangle, in the coordinates lines are given in.
+	 * <p>
+	 * Lines are then cut to the rectangle before they are drawn. Java2D strokes the
+	 * visible part of a thin line that starts far outside the clip with the two
+	 * edges' coverage only, leaving its middle row of pixels blank, so cutting it
+	 * first keeps the line the same wherever the clip falls.
+	 */
+	public void setClip(double x, double y, double width, double height) {
+		if(clip == null)
+			clip = new Rectangle2D.Double();
+		clip.setRect(x, y, width, height);
+		g.setClip(clip);
+	}
+	
+	@Override
+	public void setLineWidth(double width) {
+		if(stroke == null || stroke.getLineWidth() != (float) width)
+			stroke = new BasicStroke((float) width);
+		g.setStroke(stroke);
+	}
+	
+	@Override
+	public void setFont(LabelMetrics metrics) {
+		this.metrics = metrics;
+		g.setFont(metrics.getFont());
+	}
+	
+	@Override
+	public void strokeRect(double x, double y, double width, double height) {
+		rect.setRect(x, y, width, height);
+		g.draw(rect);
+	}
+	
+	@Override
+	public void strokeLine(double x1, double y1, double x2, double y2) {
+		line.setLine(x1, y1, x2, y2);
+		if(clip == null || clip.contains(x1, y1) && clip.contains(x2, y2)) {
+			g.draw(line);
+			return;
+		}
+		// Placed as Java2D would place the whole line, then stroked as given once cut.
+		line.setLine(snap(x1), snap(y1), snap(x2), snap(y2));
+		if(!cut(line))
+			return;
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+		g.draw(line);
+		g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_DEFAULT);
+	}
+	
+	/*
+	 * Where strokes are normalized to by default: the centre of the pixel.
+	 */
+	private static double snap(double c) {
+		return Math.floor(c) + 0.5;
+	}
+	
+	/*
+	 * Cuts the line to the clip grown by the line width, so the caps at the new ends
+	 * fall outside it (Liang-Barsky). Returns false if nothing of the line is left.
+	 */
+	private boolean cut(Line2D.Double l) {
+		double pad = stroke != null ? stroke.getLineWidth() : 1;
+		double dx = l.x2 - l.x1;
+		double dy = l.y2 - l.y1;
+		double[] t = kept;
+		t[0] = 0;
+		t[1] = 1;
+		if(!cut(-dx, l.x1 - (clip.x - pad), t) || !cut(dx, clip.x + clip.width + pad - l.x1, t)
+				|| !cut(-dy, l.y1 - (clip.y - pad), t) || !cut(dy, clip.y + clip.height + pad - l.y1, t))
+			return false;
+		double x1 = l.x1;
+		double y1 = l.y1;
+		l.setLine(x1 + t[0] * dx, y1 + t[0] * dy, x1 + t[1] * dx, y1 + t[1] * dy);
+		return true;
+	}
+	
+	private static boolean cut(double p, double q, double[] t) {
+		if(p == 0)
+			return q >= 0;
+		double r = q / p;
+		if(p < 0) {
+			if(r > t[1])
+				return false;
+			if(r > t[0])
+				t[0] = r;
+		} else {
+			if(r < t[0])
+				return false;
+			if(r < t[1])
+				t[1] = r;
+		}
+		return true;
+	}
+	
+	/*
+	 * A single line is drawn at a cost that grows with its length, including the part
+	 * outside the clip. That is the cheapest way for the short lines between
+	 * neighbouring nodes, but lines that fan out to widely spread children can be tens
+	 * of thousands of pixels long; those are stroked together as one path, which is
+	 * clipped first.
+	 */
+	@Override
+	public void strokeLines(double[] lines, int count) {
+		path.reset();
+		boolean empty = true;
+		for(int i = 0; i < count * 4; i += 4) {
+			double x1 = lines[i];
+			double y1 = lines[i + 1];
+			double x2 = lines[i + 2];
+			double y2 = lines[i + 3];
+			if(Math.abs(x2 - x1) + Math.abs(y2 - y1) <= PATH_LENGTH) {
+				strokeLine(x1, y1, x2, y2);
+				continue;
+			}
+			path.moveTo(x1, y1);
+			path.lineTo(x2, y2);
+			empty = false;
+		}
+		if(!empty)
+			g.draw(path);
+	}
+	
+	@Override
+	public void fillText(String text, double x, double y, double maxWidth) {
+		double textWidth = metrics != null ? metrics.width(text) : g.getFontMetrics().stringWidth(text);
+		if(textWidth <= maxWidth) {
+			g.drawString(text, (float) x, (float) y);
+			return;
+		}
+		AffineTransform transform = g.getTransform();
+		g.translate(x, y);
+		g.scale(maxWidth / textWidth, 1);
+		g.drawString(text, 0, 0);
+		g.setTransform(transform);
+	}
+}
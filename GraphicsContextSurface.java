@@ -0,0 +1,76 @@
+package application;
+
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+/**
+ * Draws on a JavaFX canvas.
+ * Batches of lines and rectangles are stroked as one path each, so a frame puts a
+ * few commands into the canvas's buffer however many nodes it shows, rather than one
+ * per line and box.
+ */
+public class GraphicsContextSurface implements TreeSurface {
+	
+	private final GraphicsContext gc;
+	// The font of the last metrics set, as restoring the context may reset the font.
+	private LabelMetrics metrics;
+	private Font font;
+	
+	public GraphicsContextSurface(GraphicsContext gc) {
+		this.gc = gc;
+		gc.setFill(Color.BLACK);
+		gc.setStroke(Color.BLACK);
+	}
+	
+	@Override
+	public void setLineWidth(double width) {
+		gc.setLineWidth(width);
+	}
+	
+	@Override
+	public void setFont(LabelMetrics metrics) {
+		if(metrics != this.metrics) {
+			font = Font.font(metrics.getFamily(), metrics.getSize());
+			this.metrics = metrics;
+		}
+		gc.setFont(font);
+	}
+	
+	@Override
+	public void strokeRect(double x, double y, double width, double height) {
+		gc.strokeRect(x, y, width, height);
+	}
+	
+	@Override
+	public void strokeLine(double x1, double y1, double x2, double y2) {
+		gc.strokeLine(x1, y1, x2, y2);
+	}
+	
+	@Override
+	public void strokeRects(double[] rects, int count) {
+		if(count == 0)
+			return;
+		gc.beginPath();
+		for(int i = 0; i < count * 4; i += 4)
+			gc.rect(rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+		gc.stroke();
+	}
+	
+	@Override
+	public void strokeLines(double[] lines, int count) {
+		if(count == 0)
+			return;
+		gc.beginPath();
+		for(int i = 0; i < count * 4; i += 4) {
+			gc.moveTo(lines[i], lines[i + 1]);
+			gc.lineTo(lines[i + 2], lines[i + 3]);
+		}
+		gc.stroke();
+	}
+	
+	@Override
+	public void fillText(String text, double x, double y, double maxWidth) {
+		gc.fillText(text, x, y, maxWidth);
+	}
+}
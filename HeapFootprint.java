@@ -0,0 +1,87 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the retained heap of a {@code Tree<String>} object graph against the
+ * same tree held in a {@code CompactTree<String>}. Neither tree has built its
+ * label dictionary.
+ * <p>
+ * Usage: {@code java application.HeapFootprint [nodeCount]}. Run with a fixed heap
+ * (e.g. {@code -Xms4g -Xmx4g}) so the numbers are not skewed by heap resizing.
+ */
+public class HeapFootprint {
+
+	public static void main(String[] args) {
+		int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		String[] labels = labels(nodes);
+		int[] parents = randomParents(nodes, 42L);
+
+		long base = usedHeap();
+		Tree<String> tree = buildTree(labels, parents);
+		long treeBytes = usedHeap() - base;
+
+		base = usedHeap();
+		CompactTree<String> compact = buildCompactTree(labels, parents);
+		long compactBytes = usedHeap() - base;
+
+		System.out.printf("nodes:            %,d%n", nodes);
+		System.out.printf("Tree<T>:          %,d bytes (%.1f bytes/node)%n", treeBytes, treeBytes / (double) nodes);
+		System.out.printf("CompactTree<T>:   %,d bytes (%.1f bytes/node)%n", compactBytes, compactBytes / (double) nodes);
+		System.out.printf("ratio:            %.2fx%n", treeBytes / (double) compactBytes);
+
+		// Keep both trees reachable until after the measurements.
+		if(tree.maxWidth() != compact.maxWidth())
+			System.out.println("warning: trees differ in width");
+	}
+
+	/*
+	 * Labels are allocated up front and shared by both trees so only the
+	 * structural overhead is measured.
+	 */
+	private static String[] labels(int nodes) {
+		String[] labels = new String[nodes];
+		for(int i = 0; i < nodes; i++)
+			labels[i] = Integer.toString(i);
+		return labels;
+	}
+
+	private static int[] randomParents(int nodes, long seed) {
+		Random random = new Random(seed);
+		int[] parents = new int[nodes];
+		parents[0] = -1;
+		for(int i = 1; i < nodes; i++)
+			parents[i] = random.nextInt(i);
+		return parents;
+	}
+
+	private static Tree<String> buildTree(String[] labels, int[] parents) {
+		List<Tree<String>> nodes = new ArrayList<Tree<String>>(labels.length);
+		nodes.add(new Tree<String>(labels[0]));
+		for(int i = 1; i < labels.length; i++)
+			nodes.add(nodes.get(parents[i]).addNode(labels[i]));
+		return nodes.get(0);
+	}
+
+	private static CompactTree<String> buildCompactTree(String[] labels, int[] parents) {
+		CompactTree<String> tree = new CompactTree<String>(labels[0], labels.length);
+		for(int i = 1; i < labels.length; i++)
+			tree.addNode(parents[i], labels[i]);
+		return tree;
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,32 @@
+package application;
+
+/**
+ * A tree whose nodes are addressed by int handles and read without an object per
+ * node, such as a {@link CompactTree}. {@link TreeLayout} lays one out directly, so
+ * it can be drawn and exported without building a {@link Tree} first.
+ * <p>
+ * Children are read as a list linked through their first child and next sibling.
+ *
+ * @param <T> the type of the labels stored in the tree
+ */
+public interface IndexedTree<T> {
+
+	int NO_NODE = -1;
+
+	/**
+	 * @return the handle of the root node
+	 */
+	int getRoot();
+
+	T getData(int node);
+
+	/**
+	 * @return the first child of the node, or {@link #NO_NODE} if it has none
+	 */
+	int getFirstChild(int node);
+
+	/**
+	 * @return the child after the node in its parent's children, or {@link #NO_NODE}
+	 */
+	int getNextSibling(int node);
+}
@@ -0,0 +1,117 @@
+package application;
+
+import java.awt.Font;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineMetrics;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Measures labels in one font, so the layout can size boxes to their labels and the
+ * painters can center them without measuring text on every frame.
+ * <p>
+ * The advance of every character is measured once and kept in pages of 256
+ * characters. A label is as wide as the sum of its advances, which ignores kerning.
+ * The widths of the first {@value #MAX_CACHED_LABELS} distinct labels are cached as
+ * well, so trees that repeat the same labels many times only add them up once.
+ * Metrics are shared by all layouts and may be used from several threads.
+ */
+public class LabelMetrics {
+
+	private static final int MAX_CACHED_LABELS = 1 << 16;
+	private static final FontRenderContext CONTEXT = new FontRenderContext(null, true, true);
+
+	/** The space kept between a label and the sides of its box. */
+	public static final double PADDING = 4;
+
+	/** The font labels were drawn in before boxes were sized to them. */
+	public static final LabelMetrics DEFAULT = new LabelMetrics(Font.SANS_SERIF, 12);
+
+	private final String family;
+	private final double size;
+	private final Font font;
+	private final double ascent;
+	private final double descent;
+	private final Page[] pages = new Page[256];
+	private final ConcurrentHashMap<String, Double> widths = new ConcurrentHashMap<String, Double>();
+
+	/**
+	 * @param family a font family, or one of the logical families such as
+	 *               {@link Font#SANS_SERIF}, which both JavaFX and AWT know
+	 * @param size   the font size in points
+	 */
+	public LabelMetrics(String family, double size) {
+		this.family = family;
+		this.size = size;
+		this.font = new Font(family, Font.PLAIN, 1).deriveFont((float) size);
+		LineMetrics line = font.getLineMetrics("0", CONTEXT);
+		this.ascent = line.getAscent();
+		this.descent = line.getDescent();
+	}
+
+	public String getFamily() {
+		return family;
+	}
+
+	public double getSize() {
+		return size;
+	}
+
+	Font getFont() {
+		return font;
+	}
+
+	/**
+	 * @return the distance from the top of a line of text to its baseline
+	 */
+	public double getAscent() {
+		return ascent;
+	}
+
+	public double getDescent() {
+		return descent;
+	}
+
+	/**
+	 * @return the width of a label, or 0 for {@code null}
+	 */
+	public double width(String label) {
+		if(label == null)
+			return 0;
+		Double cached = widths.get(label);
+		if(cached != null)
+			return cached;
+
+		double width = 0;
+		for(int i = 0; i < label.length(); i++)
+			width += advance(label.charAt(i));
+		if(widths.size() < MAX_CACHED_LABELS)
+			widths.put(label, width);
+		return width;
+	}
+
+	/*
+	 * Two threads measuring the same page compute the same advances, so a page may
+	 * be built twice but needs no locking.
+	 */
+	private float advance(char c) {
+		Page page = pages[c >>> 8];
+		if(page == null)
+			page = pages[c >>> 8] = new Page(font, c & 0xFF00);
+		return page.advances[c & 0xFF];
+	}
+
+	/*
+	 * The final field makes a page's advances visible to every thread that sees the page.
+	 */
+	private static final class Page {
+		final float[] advances = new float[256];
+
+		Page(Font font, int first) {
+			char[] glyph = new char[1];
+			for(int i = 0; i < 256; i++) {
+				glyph[0] = (char) (first + i);
+				advances[i] = (float) font.getStringBounds(glyph, 0, 1, CONTEXT).getWidth();
+			}
+		}
+	}
+}
@@ -1,14 +1,14 @@
-package application;
-
-public class Test extends VerticalOrientedTreeView {
-	
-	public static void main(String[] args) {
-	     launch(args);
-	}
-
-	public static Tree<String> loadTree()
-	{
-		return setupTree();
-	}
-	
-}
+package application;
+
+public class Test extends VerticalOrientedTreeView {
+	
+	public static void main(String[] args) {
+	     launch(args);
+	}
+
+	public static Tree<String> loadTree()
+	{
+		return setupTree();
+	}
+	
+}
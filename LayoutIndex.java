@@ -0,0 +1,288 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * A uniform grid over the boxes of a {@link LayoutResult}, used to find what
+ * intersects a rectangle of the canvas without looking at every node.
+ * <p>
+ * Two kinds of entries are stored: node boxes, and for every parent the "fan" that
+ * holds the lines to its children. Children of different parents never overlap
+ * along a level, so fans of the same level do not overlap either, and the index
+ * stays linear in the number of nodes. The cell size is chosen so that a cell
+ * holds a few nodes on average.
+ * <p>
+ * Entries can be updated one node at a time after the layout changed. Queries
+ * reuse internal scratch state and must be made from a single thread; other threads
+ * query the same grid through {@link #forThread()}.
+ */
+public class LayoutIndex {
+
+	private static final double MIN_CELL_SIZE = 64;
+	private static final int NODES_PER_CELL = 8;
+	private static final int ABSENT = -1;
+
+	/**
+	 * Receives the entries that intersect a queried rectangle. Every entry is
+	 * reported at most once per query.
+	 */
+	public interface Visitor {
+		void node(int node);
+
+		/**
+		 * @param parent a node whose lines to its children may cross the rectangle
+		 */
+		void fan(int parent);
+	}
+
+	private final LayoutResult layout;
+	private final double cellSize;
+	private final int columns;
+	private final int rows;
+	private final int builtSize;
+	// Entries of a cell; fans are stored as ~parent.
+	private final int[][] cells;
+	private final int[] cellCount;
+	// The cells an entry was added to, as first and last column and row, or ABSENT.
+	private int[] boxCells = new int[0];
+	private int[] fanCells = new int[0];
+	private int[] nodeSeen = new int[0];
+	private int[] fanSeen = new int[0];
+	private int query;
+
+	public LayoutIndex(LayoutResult layout) {
+		this.layout = layout;
+		builtSize = layout.size;
+		int n = Math.max(1, layout.nodeCount);
+		double w = Math.max(1, layout.canvasWidth);
+		double h = Math.max(1, layout.canvasHeight);
+		cellSize = Math.max(MIN_CELL_SIZE, Math.sqrt(w * h * NODES_PER_CELL / n));
+		columns = (int) Math.ceil(w / cellSize);
+		rows = (int) Math.ceil(h / cellSize);
+		cells = new int[columns * rows][];
+		cellCount = new int[columns * rows];
+		ensureCapacity(layout.size);
+
+		// Counted first, so every cell is allocated at its final size.
+		for(int v = 0; v < layout.size; v++) {
+			boxRange(v);
+			fanRange(v);
+			count(boxCells, v);
+			count(fanCells, v);
+		}
+		for(int i = 0; i < cells.length; i++) {
+			if(cellCount[i] > 0)
+				cells[i] = new int[cellCount[i]];
+			cellCount[i] = 0;
+		}
+		for(int v = 0; v < layout.size; v++) {
+			insert(boxCells, v, v);
+			insert(fanCells, v, ~v);
+		}
+	}
+
+	/*
+	 * Shares the grid of another index, with query state of its own.
+	 */
+	private LayoutIndex(LayoutIndex shared) {
+		layout = shared.layout;
+		cellSize = shared.cellSize;
+		columns = shared.columns;
+		rows = shared.rows;
+		builtSize = shared.builtSize;
+		cells = shared.cells;
+		cellCount = shared.cellCount;
+		boxCells = shared.boxCells;
+		fanCells = shared.fanCells;
+		nodeSeen = new int[shared.nodeSeen.length];
+		fanSeen = new int[shared.fanSeen.length];
+	}
+
+	/**
+	 * @return an index over the same grid that another thread can query while this
+	 *         one is queried; neither may be updated while both are in use
+	 */
+	public LayoutIndex forThread() {
+		return new LayoutIndex(this);
+	}
+
+	/**
+	 * Makes room for node ids below the given size.
+	 */
+	void ensureCapacity(int size) {
+		if(size <= nodeSeen.length)
+			return;
+		int from = nodeSeen.length;
+		size = Math.max(size, from + (from >> 1));
+		boxCells = Arrays.copyOf(boxCells, size * 4);
+		fanCells = Arrays.copyOf(fanCells, size * 4);
+		nodeSeen = Arrays.copyOf(nodeSeen, size);
+		fanSeen = Arrays.copyOf(fanSeen, size);
+		for(int v = from; v < size; v++) {
+			boxCells[v * 4] = ABSENT;
+			fanCells[v * 4] = ABSENT;
+		}
+	}
+
+	/**
+	 * @return whether the layout has grown so much since the index was built that
+	 *         a new index would answer queries faster
+	 */
+	boolean isOutgrown() {
+		return layout.canvasWidth > 2 * columns * cellSize || layout.canvasHeight > 2 * rows * cellSize
+				|| layout.size > 2 * Math.max(builtSize, 1024);
+	}
+
+	/**
+	 * Moves a node's box to its current position, adding or removing it as needed.
+	 */
+	void updateNode(int v) {
+		ensureCapacity(v + 1);
+		remove(boxCells, v, v);
+		boxRange(v);
+		insert(boxCells, v, v);
+	}
+
+	/**
+	 * Moves the lines from a node to its children to their current position.
+	 */
+	void updateFan(int v) {
+		ensureCapacity(v + 1);
+		remove(fanCells, v, ~v);
+		fanRange(v);
+		insert(fanCells, v, ~v);
+	}
+
+	void remove(int v) {
+		if(v >= nodeSeen.length)
+			return;
+		remove(boxCells, v, v);
+		remove(fanCells, v, ~v);
+	}
+
+	private void boxRange(int v) {
+		if(!layout.isNode(v)) {
+			boxCells[v * 4] = ABSENT;
+			return;
+		}
+		double x = layout.x[v];
+		double y = layout.y[v];
+		range(boxCells, v, x, y, x + layout.width[v], y + layout.height[v]);
+	}
+
+	private void fanRange(int p) {
+		if(!layout.isNode(p) || layout.childCount[p] == 0) {
+			fanCells[p * 4] = ABSENT;
+			return;
+		}
+		int first = layout.children[p][0];
+		int last = layout.children[p][layout.childCount[p] - 1];
+		double minX = Math.min(layout.edgeStartX(p), Math.min(layout.edgeEndX(first), layout.edgeEndX(last)));
+		double maxX = Math.max(layout.edgeStartX(p), Math.max(layout.edgeEndX(first), layout.edgeEndX(last)));
+		double minY = Math.min(layout.edgeStartY(p), Math.min(layout.edgeEndY(first), layout.edgeEndY(last)));
+		double maxY = Math.max(layout.edgeStartY(p), Math.max(layout.edgeEndY(first), layout.edgeEndY(last)));
+		range(fanCells, p, minX, minY, maxX, maxY);
+	}
+
+	private void range(int[] ranges, int v, double minX, double minY, double maxX, double maxY) {
+		int i = v * 4;
+		ranges[i] = column(minX);
+		ranges[i + 1] = column(maxX);
+		ranges[i + 2] = row(minY);
+		ranges[i + 3] = row(maxY);
+	}
+
+	private void count(int[] ranges, int v) {
+		int i = v * 4;
+		if(ranges[i] == ABSENT)
+			return;
+		for(int r = ranges[i + 2]; r <= ranges[i + 3]; r++) {
+			for(int c = ranges[i]; c <= ranges[i + 1]; c++)
+				cellCount[r * columns + c]++;
+		}
+	}
+
+	private void insert(int[] ranges, int v, int entry) {
+		int i = v * 4;
+		if(ranges[i] == ABSENT)
+			return;
+		for(int r = ranges[i + 2]; r <= ranges[i + 3]; r++) {
+			for(int c = ranges[i]; c <= ranges[i + 1]; c++) {
+				int cell = r * columns + c;
+				int[] list = cells[cell];
+				int count = cellCount[cell];
+				if(list == null)
+					list = cells[cell] = new int[4];
+				else if(count == list.length)
+					list = cells[cell] = Arrays.copyOf(list, count * 2);
+				list[count] = entry;
+				cellCount[cell] = count + 1;
+			}
+		}
+	}
+
+	private void remove(int[] ranges, int v, int entry) {
+		int i = v * 4;
+		if(ranges[i] == ABSENT)
+			return;
+		for(int r = ranges[i + 2]; r <= ranges[i + 3]; r++) {
+			for(int c = ranges[i]; c <= ranges[i + 1]; c++) {
+				int cell = r * columns + c;
+				int[] list = cells[cell];
+				int last = --cellCount[cell];
+				for(int k = 0; k <= last; k++) {
+					if(list[k] == entry) {
+						list[k] = list[last];
+						break;
+					}
+				}
+			}
+		}
+		ranges[i] = ABSENT;
+	}
+
+	private int column(double x) {
+		return Math.max(0, Math.min(columns - 1, (int) (x / cellSize)));
+	}
+
+	private int row(double y) {
+		return Math.max(0, Math.min(rows - 1, (int) (y / cellSize)));
+	}
+
+	/**
+	 * Reports the nodes and fans whose grid cells intersect the given rectangle.
+	 * Entries near the border may lie just outside of it.
+	 */
+	public void query(double x, double y, double width, double height, Visitor visitor) {
+		if(layout.nodeCount == 0)
+			return;
+		if(++query == 0) {
+			Arrays.fill(nodeSeen, 0);
+			Arrays.fill(fanSeen, 0);
+			query = 1;
+		}
+		int c0 = column(x);
+		int c1 = column(x + width);
+		int r0 = row(y);
+		int r1 = row(y + height);
+		for(int r = r0; r <= r1; r++) {
+			for(int c = c0; c <= c1; c++) {
+				int cell = r * columns + c;
+				int[] list = cells[cell];
+				for(int i = 0, end = cellCount[cell]; i < end; i++) {
+					int entry = list[i];
+					if(entry >= 0) {
+						if(nodeSeen[entry] != query) {
+							nodeSeen[entry] = query;
+							visitor.node(entry);
+						}
+					}
+					else if(fanSeen[~entry] != query) {
+						fanSeen[~entry] = query;
+						visitor.fan(~entry);
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,216 @@
+package application;
+
+/**
+ * Draws a {@link LayoutResult}: a box and label for every node and a line from each
+ * parent to each of its children.
+ * <p>
+ * Boxes and lines are not stroked one call at a time. Their coordinates are collected
+ * in buffers the painter keeps from one paint to the next and handed to the surface
+ * in batches of up to {@value #BATCH_SIZE}, see {@link TreeSurface#strokeLines}; labels
+ * are drawn as they are reached, so they do not break up the batches. A painter kept
+ * by a view allocates nothing while it paints a frame. A painter must not be used by
+ * two threads at once.
+ */
+public class LayoutPainter {
+
+	static final double LINE_WIDTH = 2;
+	/** The most lines, or boxes, handed to the surface at once. */
+	public static final int BATCH_SIZE = 4096;
+
+	// Four coordinates per line or box, see TreeSurface.strokeLines and strokeRects.
+	private final double[] lines = new double[BATCH_SIZE * 4];
+	private final double[] boxes = new double[BATCH_SIZE * 4];
+	private int lineCount;
+	private int boxCount;
+
+	// The paint in progress.
+	private TreeSurface surface;
+	private LayoutResult layout;
+	private double x;
+	private double y;
+	private double width;
+	private double height;
+	private final LayoutIndex.Visitor visitor = new LayoutIndex.Visitor() {
+		@Override
+		public void node(int node) {
+			addNode(node);
+		}
+
+		@Override
+		public void fan(int parent) {
+			addFan(parent);
+		}
+	};
+
+	/**
+	 * Draws all of a layout.
+	 */
+	public void paint(TreeSurface surface, LayoutResult layout) {
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.DRAW).nodes(layout.nodeCount);
+		begin(span.count(surface), layout);
+		for(int v = 0; v < layout.size; v++) {
+			if(!layout.isNode(v))
+				continue;
+			addNode(v);
+			int p = layout.parent[v];
+			if(p >= 0)
+				addEdge(p, v);
+		}
+		end();
+		span.end();
+	}
+
+	/**
+	 * Draws only the nodes and lines that intersect a rectangle of the canvas, so the
+	 * cost depends on what is visible rather than on the size of the tree.
+	 *
+	 * @param index an index built over the current contents of {@code layout}
+	 */
+	public void paint(TreeSurface surface, LayoutResult layout, LayoutIndex index,
+			double x, double y, double width, double height) {
+		begin(surface, layout);
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		index.query(x, y, width, height, visitor);
+		end();
+	}
+
+	/**
+	 * Starts a paint: sets the line width and font of the surface for the layout.
+	 */
+	void begin(TreeSurface surface, LayoutResult layout) {
+		this.surface = surface;
+		this.layout = layout;
+		// Left over if a surface failed during the last paint.
+		boxCount = 0;
+		lineCount = 0;
+		surface.setLineWidth(LINE_WIDTH);
+		surface.setFont(layout.metrics);
+	}
+
+	/**
+	 * Strokes what is still buffered and lets go of the surface and layout.
+	 */
+	void end() {
+		flush();
+		surface = null;
+		layout = null;
+	}
+
+	/**
+	 * Strokes the buffered boxes and lines, as must be done before the line width
+	 * of the surface changes.
+	 */
+	void flush() {
+		if(boxCount > 0)
+			surface.strokeRects(boxes, boxCount);
+		if(lineCount > 0)
+			surface.strokeLines(lines, lineCount);
+		boxCount = 0;
+		lineCount = 0;
+	}
+
+	/*
+	 * Labels are centered in their box using the widths measured during layout, and
+	 * squeezed if they are wider than the box allows.
+	 */
+	void addNode(int v) {
+		double x = layout.x[v];
+		double y = layout.y[v];
+		double w = layout.width[v];
+		double h = layout.height[v];
+		double room = w - 2 * LabelMetrics.PADDING;
+		double text = Math.min(layout.labelWidth[v], room);
+		LabelMetrics metrics = layout.metrics;
+		surface.fillText(layout.labels[v], x + (w - text) / 2,
+				y + (h + metrics.getAscent() - metrics.getDescent()) / 2, room);
+		addBox(x, y, w, h);
+	}
+
+	void addBox(int v) {
+		addBox(layout.x[v], layout.y[v], layout.width[v], layout.height[v]);
+	}
+
+	void addBox(double x, double y, double width, double height) {
+		if(boxCount == BATCH_SIZE)
+			flush();
+		int i = boxCount++ * 4;
+		boxes[i] = x;
+		boxes[i + 1] = y;
+		boxes[i + 2] = width;
+		boxes[i + 3] = height;
+	}
+
+	void addEdge(int p, int c) {
+		if(lineCount == BATCH_SIZE)
+			flush();
+		int i = lineCount++ * 4;
+		lines[i] = layout.edgeStartX(p);
+		lines[i + 1] = layout.edgeStartY(p);
+		lines[i + 2] = layout.edgeEndX(c);
+		lines[i + 3] = layout.edgeEndY(c);
+	}
+
+	/*
+	 * Draws the lines from a parent to those of its children whose line crosses the
+	 * rectangle. All lines start at the same point and end on the same level, in
+	 * order along it, so the crossing lines are a consecutive run of children that
+	 * can be found by binary search.
+	 */
+	private void addFan(int p) {
+		boolean horizontal = layout.orientation == Orientation.HORIZONTAL;
+		int[] children = layout.children[p];
+		int first = children[0];
+
+		// "along" runs with a level, "across" from one level to the next.
+		double start = horizontal ? layout.edgeStartX(p) : layout.edgeStartY(p);
+		double from = horizontal ? layout.edgeStartY(p) : layout.edgeStartX(p);
+		double to = horizontal ? layout.edgeEndY(first) : layout.edgeEndX(first);
+		double alongMin = horizontal ? x : y;
+		double alongMax = alongMin + (horizontal ? width : height);
+		double acrossMin = horizontal ? y : x;
+		double acrossMax = acrossMin + (horizontal ? height : width);
+
+		// The fraction of every line that lies within the rectangle's across range.
+		double t0 = 0;
+		double t1 = 1;
+		if(to != from) {
+			t0 = Math.max(0, Math.min((acrossMin - from) / (to - from), (acrossMax - from) / (to - from)));
+			t1 = Math.min(1, Math.max((acrossMin - from) / (to - from), (acrossMax - from) / (to - from)));
+		}
+		else if(from < acrossMin || from > acrossMax)
+			return;
+		if(t0 > t1)
+			return;
+
+		// Both ends of that part of a line move monotonically along the level with the child.
+		int lo = 0;
+		int hi = layout.childCount[p];
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			double d = along(layout, children[mid], horizontal) - start;
+			if(start + d * (d >= 0 ? t1 : t0) < alongMin)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		int visibleFirst = lo;
+		hi = layout.childCount[p];
+		while(lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			double d = along(layout, children[mid], horizontal) - start;
+			if(start + d * (d >= 0 ? t0 : t1) <= alongMax)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		for(int i = visibleFirst; i < lo; i++)
+			addEdge(p, children[i]);
+	}
+
+	private static double along(LayoutResult layout, int c, boolean horizontal) {
+		return horizontal ? layout.edgeEndX(c) : layout.edgeEndY(c);
+	}
+}
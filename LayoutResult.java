@@ -0,0 +1,218 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Node boxes produced by {@link TreeLayout}, stored as parallel primitive arrays
+ * indexed by node id. A fresh layout numbers the nodes in breadth-first order, so
+ * the root is node {@code 0} and every parent comes before its children. A
+ * {@link LiveLayout} appends the ids of nodes added later and leaves the ids of
+ * removed nodes unused, so ids below {@link #size()} may be free.
+ * <p>
+ * A result can be passed back to the layout engine to be refilled, which reuses
+ * its arrays when they are large enough.
+ */
+public class LayoutResult {
+	
+	static final int NONE = -1;
+	static final int FREE = -2;
+	
+	Orientation orientation = Orientation.HORIZONTAL;
+	int size;
+	int nodeCount;
+	double[] x = new double[0];
+	double[] y = new double[0];
+	double[] width = new double[0];
+	double[] height = new double[0];
+	int[] parent = new int[0];
+	int[] depth = new int[0];
+	int[][] children = new int[0][];
+	int[] childCount = new int[0];
+	String[] labels = new String[0];
+	double[] labelWidth = new double[0];
+	LabelMetrics metrics = LabelMetrics.DEFAULT;
+	double canvasWidth;
+	double canvasHeight;
+	
+	void ensureCapacity(int capacity) {
+		if(capacity <= x.length)
+			return;
+		capacity = Math.max(capacity, x.length + (x.length >> 1));
+		x = Arrays.copyOf(x, capacity);
+		y = Arrays.copyOf(y, capacity);
+		width = Arrays.copyOf(width, capacity);
+		height = Arrays.copyOf(height, capacity);
+		parent = Arrays.copyOf(parent, capacity);
+		depth = Arrays.copyOf(depth, capacity);
+		children = Arrays.copyOf(children, capacity);
+		childCount = Arrays.copyOf(childCount, capacity);
+		labels = Arrays.copyOf(labels, capacity);
+		labelWidth = Arrays.copyOf(labelWidth, capacity);
+	}
+	
+	/**
+	 * @return a copy that later layouts of this result do not change, e.g. to be
+	 *         exported on another thread while the tree is edited
+	 */
+	public LayoutResult copy() {
+		LayoutResult copy = new LayoutResult();
+		copy.orientation = orientation;
+		copy.size = size;
+		copy.nodeCount = nodeCount;
+		copy.x = Arrays.copyOf(x, size);
+		copy.y = Arrays.copyOf(y, size);
+		copy.width = Arrays.copyOf(width, size);
+		copy.height = Arrays.copyOf(height, size);
+		copy.parent = Arrays.copyOf(parent, size);
+		copy.depth = Arrays.copyOf(depth, size);
+		copy.children = new int[size][];
+		for(int v = 0; v < size; v++) {
+			if(childCount[v] > 0)
+				copy.children[v] = Arrays.copyOf(children[v], childCount[v]);
+		}
+		copy.childCount = Arrays.copyOf(childCount, size);
+		copy.labels = Arrays.copyOf(labels, size);
+		copy.labelWidth = Arrays.copyOf(labelWidth, size);
+		copy.metrics = metrics;
+		copy.canvasWidth = canvasWidth;
+		copy.canvasHeight = canvasHeight;
+		return copy;
+	}
+	
+	/*
+	 * Appends a child to a parent's child list, growing the list if needed.
+	 */
+	void addChild(int p, int child) {
+		int[] list = children[p];
+		int count = childCount[p];
+		if(list == null)
+			list = children[p] = new int[4];
+		else if(count == list.length)
+			list = children[p] = Arrays.copyOf(list, count * 2);
+		list[count] = child;
+		childCount[p] = count + 1;
+	}
+	
+	public Orientation getOrientation() {
+		return orientation;
+	}
+	
+	/**
+	 * @return one more than the highest node id in use
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * @return the number of nodes laid out
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+	
+	/**
+	 * @return whether the id belongs to a node, rather than to one that was removed
+	 */
+	public boolean isNode(int node) {
+		return parent[node] != FREE;
+	}
+	
+	/**
+	 * @return the left edge of the node's box
+	 */
+	public double getX(int node) {
+		return x[node];
+	}
+	
+	/**
+	 * @return the top edge of the node's box
+	 */
+	public double getY(int node) {
+		return y[node];
+	}
+	
+	public double getWidth(int node) {
+		return width[node];
+	}
+	
+	public double getHeight(int node) {
+		return height[node];
+	}
+	
+	/**
+	 * @return the parent of the node, or -1 for the root
+	 */
+	public int getParent(int node) {
+		return parent[node];
+	}
+	
+	public int getDepth(int node) {
+		return depth[node];
+	}
+	
+	public int getChildCount(int node) {
+		return childCount[node];
+	}
+	
+	/**
+	 * @return the child at the given position, children being ordered along their level
+	 */
+	public int getChild(int node, int index) {
+		if(index >= childCount[node])
+			throw new IndexOutOfBoundsException("Node " + node + " has " + childCount[node] + " children");
+		return children[node][index];
+	}
+	
+	public String getLabel(int node) {
+		return labels[node];
+	}
+	
+	/**
+	 * @return the width of the node's label in the font of {@link #getMetrics()}
+	 */
+	public double getLabelWidth(int node) {
+		return labelWidth[node];
+	}
+	
+	/**
+	 * @return the metrics the boxes were sized with, whose font labels are drawn in
+	 */
+	public LabelMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * @return the width needed to show every node, including margins
+	 */
+	public double getCanvasWidth() {
+		return canvasWidth;
+	}
+	
+	/**
+	 * @return the height needed to show every node, including margins
+	 */
+	public double getCanvasHeight() {
+		return canvasHeight;
+	}
+	
+	/*
+	 * Lines to children leave a node at the middle of the side facing the next level
+	 * and enter a child at the middle of the side facing its parent.
+	 */
+	double edgeStartX(int node) {
+		return orientation == Orientation.HORIZONTAL ? x[node] + width[node]/2 : x[node] + width[node];
+	}
+	
+	double edgeStartY(int node) {
+		return orientation == Orientation.HORIZONTAL ? y[node] + height[node] : y[node] + height[node]/2;
+	}
+	
+	double edgeEndX(int node) {
+		return orientation == Orientation.HORIZONTAL ? x[node] + width[node]/2 : x[node];
+	}
+	
+	double edgeEndY(int node) {
+		return orientation == Orientation.HORIZONTAL ? y[node] : y[node] + height[node]/2;
+	}
+}
@@ -0,0 +1,209 @@
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+
+/**
+ * Shows a huge outline file as a {@code Tree} that only holds the parts that were
+ * asked for.
+ * <p>
+ * The file is {@link OutlineIndex indexed} first. The tree starts out with the top
+ * of the outline, breadth first, and children are added to nodes as they are
+ * {@link #show(Collection) shown} on screen or {@link #expand(Tree) expanded}, a
+ * batch at a time. Once more than the allowed number of nodes are loaded, the
+ * subtrees shown or expanded longest ago are collapsed again, except for those that
+ * are on screen or contain the node just expanded. The tree is edited in place, so a
+ * {@link LiveLayout} of it follows along.
+ * <p>
+ * Instances must be used from a single thread, the one that edits the tree.
+ */
+public class LazyOutline implements Closeable {
+
+	/** The number of children added to a node by one expansion. */
+	public static final int CHILD_BATCH = 1024;
+
+	private final OutlineIndex index;
+	private final Tree<String> tree;
+	private final int maxLoaded;
+	// The index node of every loaded tree node.
+	private final IdentityHashMap<Tree<String>, Integer> nodes = new IdentityHashMap<Tree<String>, Integer>();
+	// The next child to load, for nodes whose children are partly loaded.
+	private final IdentityHashMap<Tree<String>, Integer> resume = new IdentityHashMap<Tree<String>, Integer>();
+	// Nodes with loaded children, least recently expanded or shown first.
+	private final LinkedHashMap<Tree<String>, Boolean> expanded = new LinkedHashMap<Tree<String>, Boolean>(16, 0.75f, true);
+
+	/**
+	 * Indexes an outline file and loads the top of it.
+	 *
+	 * @param initialNodes how many nodes to load right away
+	 * @param maxLoaded    how many nodes may be loaded before subtrees are collapsed
+	 */
+	public LazyOutline(Path path, int initialNodes, int maxLoaded) throws IOException {
+		this.index = OutlineIndex.build(path);
+		this.maxLoaded = Math.max(maxLoaded, initialNodes);
+		try {
+			tree = new Tree<String>(index.size() == 0 ? "" : index.getLabel(0));
+			if(index.size() > 0)
+				loadBreadthFirst(initialNodes);
+		} catch (IOException | RuntimeException e) {
+			index.close();
+			throw e;
+		}
+	}
+
+	public Tree<String> getTree() {
+		return tree;
+	}
+
+	public OutlineIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the number of nodes in the tree, at most the number in the file
+	 */
+	public int getLoadedCount() {
+		return nodes.size();
+	}
+
+	/**
+	 * @return whether a node of the tree has children in the file that are not loaded
+	 */
+	public boolean isExpandable(Tree<String> node) {
+		Integer n = nodes.get(node);
+		if(n == null)
+			return false;
+		Integer next = resume.get(node);
+		return next != null ? next < index.getEnd(n) : !expanded.containsKey(node) && index.hasChildren(n);
+	}
+
+	/**
+	 * Loads the next {@value #CHILD_BATCH} children of a node, then collapses other
+	 * subtrees if too many nodes are loaded.
+	 *
+	 * @return whether any children were added
+	 */
+	public boolean expand(Tree<String> node) throws IOException {
+		if(!isExpandable(node))
+			return false;
+		loadChildren(node, CHILD_BATCH);
+		evict(node);
+		return true;
+	}
+
+	/**
+	 * Notes which nodes are on screen. Their subtrees are kept, and the next children
+	 * of those that have more in the file are loaded, at most {@value #CHILD_BATCH}
+	 * nodes per call so that a view fills in over several frames. Subtrees that are
+	 * not on screen are collapsed to make room.
+	 *
+	 * @return whether any children were added
+	 */
+	public boolean show(Collection<Tree<String>> visible) throws IOException {
+		Set<Tree<String>> keep = Collections.newSetFromMap(new IdentityHashMap<Tree<String>, Boolean>());
+		// Looking a node up makes it the most recently used, so what is on screen goes last.
+		for(Tree<String> node : visible) {
+			for(Tree<String> t = node; t != null && keep.add(t); t = t.getParent())
+				expanded.get(t);
+		}
+		int budget = CHILD_BATCH;
+		for(Tree<String> node : visible) {
+			if(budget == 0)
+				break;
+			if(!isExpandable(node))
+				continue;
+			if(nodes.size() + budget > maxLoaded) {
+				collapse(keep, maxLoaded - budget);
+				budget = Math.min(budget, maxLoaded - nodes.size());
+				if(budget <= 0)
+					break;
+			}
+			budget -= loadChildren(node, budget);
+		}
+		return budget < CHILD_BATCH;
+	}
+
+	private void loadBreadthFirst(int budget) throws IOException {
+		nodes.put(tree, 0);
+		ArrayDeque<Tree<String>> pending = new ArrayDeque<Tree<String>>();
+		pending.add(tree);
+		while(!pending.isEmpty() && nodes.size() < budget) {
+			Tree<String> node = pending.poll();
+			loadChildren(node, budget - nodes.size());
+			for(Tree<String> child : node.getChildNodes())
+				pending.add(child);
+		}
+	}
+
+	/*
+	 * @return the number of children added
+	 */
+	private int loadChildren(Tree<String> node, int count) throws IOException {
+		int n = nodes.get(node);
+		Integer next = resume.get(node);
+		int c = next != null ? next : n + 1;
+		int end = index.getEnd(n);
+		int i = 0;
+		for(; i < count && c < end; i++, c = index.getEnd(c))
+			nodes.put(node.addNode(index.getLabel(c)), c);
+		expanded.put(node, Boolean.TRUE);
+		resume.put(node, c);
+		return i;
+	}
+
+	/*
+	 * The expanded node and its ancestors are skipped, or the nodes just loaded
+	 * would be the first to go.
+	 */
+	private void evict(Tree<String> keep) {
+		if(nodes.size() <= maxLoaded)
+			return;
+		Set<Tree<String>> path = Collections.newSetFromMap(new IdentityHashMap<Tree<String>, Boolean>());
+		for(Tree<String> t = keep; t != null; t = t.getParent())
+			path.add(t);
+		collapse(path, maxLoaded);
+	}
+
+	/*
+	 * Collapses the subtrees used longest ago, other than those of the given nodes,
+	 * until no more than a number of nodes are loaded.
+	 */
+	private void collapse(Set<Tree<String>> keep, int limit) {
+		Iterator<Tree<String>> oldest = expanded.keySet().iterator();
+		while(nodes.size() > limit && oldest.hasNext()) {
+			Tree<String> node = oldest.next();
+			if(keep.contains(node))
+				continue;
+			oldest.remove();
+			resume.remove(node);
+			forgetDescendants(node);
+			node.clear();
+			// Descendants that were expanded themselves were forgotten as well.
+			oldest = expanded.keySet().iterator();
+		}
+	}
+
+	private void forgetDescendants(Tree<String> node) {
+		ArrayDeque<Tree<String>> pending = new ArrayDeque<Tree<String>>(node.getChildNodes());
+		while(!pending.isEmpty()) {
+			Tree<String> t = pending.pop();
+			nodes.remove(t);
+			resume.remove(t);
+			expanded.remove(t);
+			pending.addAll(t.getChildNodes());
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		index.close();
+	}
+}
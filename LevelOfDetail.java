@@ -0,0 +1,368 @@
+package application;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Arrays;
+
+/**
+ * Draws a zoomed out {@link LayoutResult} with small subtrees collapsed into one
+ * glyph each, so the cost of a frame follows what can be read on screen rather than
+ * the number of nodes in view.
+ * <p>
+ * Below {@link #DETAIL_SCALE}, the tree is walked from the root. A subtree whose
+ * bounds take less than {@value #AGGREGATE_PIXELS} pixels in both directions on
+ * screen is drawn as the outline of those bounds, labelled with its node count and
+ * depth when the label fits, and none of its nodes are visited. Zooming in makes
+ * subtrees larger than that and expands them; clicking a glyph {@link #expand(int)
+ * expands} it at any scale, which shows its children, possibly as glyphs again.
+ * Siblings that would each be that small are drawn together, as one glyph for as
+ * many of them as fit in its size, so a node with a million leaves takes a few
+ * hundred glyphs rather than a million boxes.
+ * <p>
+ * The size, depth and bounds of every subtree are computed in one pass over the
+ * layout, the first time they are needed after the layout changed.
+ */
+public class LevelOfDetail {
+
+	/** The scale below which subtrees are collapsed and labels are no longer drawn. */
+	public static final double DETAIL_SCALE = 0.5;
+
+	private static final double AGGREGATE_PIXELS = 96;
+	// Labels smaller than this on screen are not drawn.
+	private static final double MIN_LABEL_PIXELS = 6;
+
+	private final LayoutResult layout;
+	private boolean stale = true;
+	// Per subtree: its node count, its depth counted in levels, and its bounds.
+	private int[] count = new int[0];
+	private int[] levels = new int[0];
+	private double[] bounds = new double[0];
+	private boolean[] expanded = new boolean[0];
+	// The glyphs drawn by the last paint, for hit testing: the collapsed node, or the
+	// parent and the range of its children drawn together, with their bounds, node
+	// count and depth.
+	private int[] glyphs = new int[16 * 3];
+	private double[] glyphBounds = new double[16 * 4];
+	private int[] glyphNodes = new int[16 * 2];
+	private int glyphCount;
+	private final double[] run = new double[4];
+	private final StringBuilder glyphLabel = new StringBuilder();
+	private final char groupingSeparator = DecimalFormatSymbols.getInstance().getGroupingSeparator();
+	private int[] stack = new int[64];
+	private final LayoutPainter painter = new LayoutPainter();
+	private LabelMetrics glyphMetrics;
+	private double glyphScale;
+
+	public LevelOfDetail(LayoutResult layout) {
+		this.layout = layout;
+	}
+
+	/**
+	 * @return whether a tree drawn at a scale needs less detail than all of it
+	 */
+	public static boolean applies(double scale) {
+		return scale < DETAIL_SCALE;
+	}
+
+	/**
+	 * Notes that nodes of the layout moved, were added or were removed.
+	 */
+	public void invalidate() {
+		stale = true;
+	}
+
+	/**
+	 * Forgets which subtrees were expanded, after the nodes were numbered anew.
+	 */
+	public void reset() {
+		stale = true;
+		expanded = new boolean[0];
+		glyphCount = 0;
+	}
+
+	/**
+	 * @return the number of nodes in the subtree of a node
+	 */
+	public int getCount(int node) {
+		update();
+		return count[node];
+	}
+
+	/**
+	 * @return the number of levels of the subtree of a node, 1 for a leaf
+	 */
+	public int getLevels(int node) {
+		update();
+		return levels[node];
+	}
+
+	/**
+	 * Shows the children of a collapsed subtree, whatever its size on screen.
+	 */
+	public void expand(int node) {
+		if(node >= expanded.length)
+			expanded = Arrays.copyOf(expanded, Math.max(node + 1, layout.size));
+		expanded[node] = true;
+	}
+
+	/**
+	 * Expands what the glyph drawn at a point of the canvas by the last paint stands
+	 * for: a collapsed subtree, or each of the siblings drawn together.
+	 *
+	 * @return whether there was a glyph at the point
+	 */
+	public boolean expandAt(double x, double y) {
+		for(int i = 0; i < glyphCount; i++) {
+			int b = i * 4;
+			if(x < glyphBounds[b] || x > glyphBounds[b + 2] || y < glyphBounds[b + 1] || y > glyphBounds[b + 3])
+				continue;
+			int v = glyphs[i * 3];
+			if(v >= layout.size || !layout.isNode(v))
+				return false;
+			int from = glyphs[i * 3 + 1];
+			if(from < 0)
+				expand(v);
+			else {
+				int to = Math.min(glyphs[i * 3 + 2], layout.childCount[v] - 1);
+				for(int c = from; c <= to; c++)
+					expand(layout.children[v][c]);
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Draws what intersects a rectangle of the canvas, as seen at a scale.
+	 */
+	public void paint(TreeSurface surface, double scale, double x, double y, double width, double height) {
+		glyphCount = 0;
+		if(layout.nodeCount == 0 || !layout.isNode(0))
+			return;
+		update();
+		if(glyphMetrics == null || glyphScale != scale) {
+			LabelMetrics metrics = layout.metrics;
+			glyphMetrics = new LabelMetrics(metrics.getFamily(), metrics.getSize() / scale);
+			glyphScale = scale;
+		}
+		boolean labels = layout.metrics.getSize() * scale >= MIN_LABEL_PIXELS;
+		double right = x + width;
+		double bottom = y + height;
+		double aggregate = AGGREGATE_PIXELS / scale;
+
+		painter.begin(surface, layout);
+		int size = 0;
+		if(intersects(0, x, y, right, bottom))
+			stack[size++] = 0;
+		// Depth first with an explicit stack, as trees may be far deeper than the call stack.
+		while(size > 0) {
+			int v = stack[--size];
+			int b = v * 4;
+			if(layout.childCount[v] > 0 && isSmall(v, aggregate)) {
+				addGlyph(v, -1, -1, bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], count[v], levels[v]);
+				continue;
+			}
+
+			if(layout.x[v] <= right && layout.x[v] + layout.width[v] >= x
+					&& layout.y[v] <= bottom && layout.y[v] + layout.height[v] >= y) {
+				if(labels)
+					painter.addNode(v);
+				else
+					painter.addBox(v);
+			}
+			int[] children = layout.children[v];
+			for(int i = layout.childCount[v] - 1; i >= 0; i--) {
+				int c = children[i];
+				if(isSmall(c, aggregate) && i > 0 && isSmall(children[i - 1], aggregate)) {
+					int last = i;
+					i = addRun(v, i, aggregate, x, y, right, bottom);
+					if(i < last)
+						continue;
+				}
+				addEdge(v, c, x, y, right, bottom);
+				if(intersects(c, x, y, right, bottom)) {
+					if(size == stack.length)
+						stack = Arrays.copyOf(stack, size * 2);
+					stack[size++] = c;
+				}
+			}
+		}
+
+		// Glyphs go last, with their own line width and font.
+		painter.flush();
+		surface.setLineWidth(1 / scale);
+		surface.setFont(glyphMetrics);
+		for(int i = 0; i < glyphCount; i++)
+			paintGlyph(surface, i, scale);
+		painter.end();
+	}
+
+	/*
+	 * Draws the siblings before and including the child at an index of a parent
+	 * together, as many as fit in a glyph, if that is more than one; their lines from
+	 * the parent are reduced to those to the first and the last of them.
+	 *
+	 * @return the index of the first child drawn together
+	 */
+	private int addRun(int v, int last, double aggregate, double x, double y, double right, double bottom) {
+		int[] children = layout.children[v];
+		int c = children[last];
+		int b = c * 4;
+		run[0] = bounds[b];
+		run[1] = bounds[b + 1];
+		run[2] = bounds[b + 2];
+		run[3] = bounds[b + 3];
+		int nodes = count[c];
+		int depth = levels[c];
+		int first = last;
+		while(first > 0) {
+			int s = children[first - 1];
+			int sb = s * 4;
+			if(!isSmall(s, aggregate)
+					|| Math.max(run[2], bounds[sb + 2]) - Math.min(run[0], bounds[sb]) > aggregate
+					|| Math.max(run[3], bounds[sb + 3]) - Math.min(run[1], bounds[sb + 1]) > aggregate)
+				break;
+			run[0] = Math.min(run[0], bounds[sb]);
+			run[1] = Math.min(run[1], bounds[sb + 1]);
+			run[2] = Math.max(run[2], bounds[sb + 2]);
+			run[3] = Math.max(run[3], bounds[sb + 3]);
+			nodes += count[s];
+			depth = Math.max(depth, levels[s]);
+			first--;
+		}
+		if(first == last)
+			return last;
+
+		if(run[0] <= right && run[2] >= x && run[1] <= bottom && run[3] >= y)
+			addGlyph(v, first, last, run[0], run[1], run[2], run[3], nodes, depth);
+		addEdge(v, children[first], x, y, right, bottom);
+		addEdge(v, c, x, y, right, bottom);
+		return first;
+	}
+
+	private void addEdge(int v, int c, double x, double y, double right, double bottom) {
+		double x0 = Math.min(layout.edgeStartX(v), layout.edgeEndX(c));
+		double x1 = Math.max(layout.edgeStartX(v), layout.edgeEndX(c));
+		double y0 = Math.min(layout.edgeStartY(v), layout.edgeEndY(c));
+		double y1 = Math.max(layout.edgeStartY(v), layout.edgeEndY(c));
+		if(x0 <= right && x1 >= x && y0 <= bottom && y1 >= y)
+			painter.addEdge(v, c);
+	}
+
+	private void addGlyph(int v, int from, int to, double minX, double minY, double maxX, double maxY,
+			int nodes, int depth) {
+		if(glyphCount * 3 == glyphs.length) {
+			glyphs = Arrays.copyOf(glyphs, glyphs.length * 2);
+			glyphBounds = Arrays.copyOf(glyphBounds, glyphBounds.length * 2);
+			glyphNodes = Arrays.copyOf(glyphNodes, glyphNodes.length * 2);
+		}
+		int g = glyphCount++;
+		glyphs[g * 3] = v;
+		glyphs[g * 3 + 1] = from;
+		glyphs[g * 3 + 2] = to;
+		glyphBounds[g * 4] = minX;
+		glyphBounds[g * 4 + 1] = minY;
+		glyphBounds[g * 4 + 2] = maxX;
+		glyphBounds[g * 4 + 3] = maxY;
+		glyphNodes[g * 2] = nodes;
+		glyphNodes[g * 2 + 1] = depth;
+	}
+
+	private void paintGlyph(TreeSurface surface, int g, double scale) {
+		int b = g * 4;
+		double x = glyphBounds[b];
+		double y = glyphBounds[b + 1];
+		double w = glyphBounds[b + 2] - x;
+		double h = glyphBounds[b + 3] - y;
+		painter.addBox(x, y, w, h);
+
+		double room = w - 2 * LabelMetrics.PADDING / scale;
+		if(h * scale < layout.metrics.getSize() + 2 || room <= 0)
+			return;
+		// Built without String.format, which costs more than drawing the glyph.
+		StringBuilder label = glyphLabel;
+		label.setLength(0);
+		appendGrouped(label, glyphNodes[g * 2]);
+		int digits = label.length();
+		label.append(" nodes, ").append(glyphNodes[g * 2 + 1]).append(" levels");
+		String text = label.toString();
+		double textWidth = glyphMetrics.width(text);
+		if(textWidth > room) {
+			text = text.substring(0, digits);
+			textWidth = Math.min(glyphMetrics.width(text), room);
+		}
+		surface.fillText(text, x + (w - textWidth) / 2,
+				y + (h + glyphMetrics.getAscent() - glyphMetrics.getDescent()) / 2, room);
+	}
+
+	/*
+	 * Appends a count with its digits grouped in thousands, as %,d would.
+	 */
+	private void appendGrouped(StringBuilder out, int value) {
+		int start = out.length();
+		out.append(value);
+		for(int i = out.length() - 3; i > start; i -= 3)
+			out.insert(i, groupingSeparator);
+	}
+
+	private boolean isExpanded(int v) {
+		return v < expanded.length && expanded[v];
+	}
+
+	/*
+	 * Whether a subtree is drawn as one glyph, or together with its siblings.
+	 */
+	private boolean isSmall(int v, double aggregate) {
+		int b = v * 4;
+		return !isExpanded(v) && bounds[b + 2] - bounds[b] <= aggregate && bounds[b + 3] - bounds[b + 1] <= aggregate;
+	}
+
+	private boolean intersects(int v, double x, double y, double right, double bottom) {
+		int b = v * 4;
+		return bounds[b] <= right && bounds[b + 2] >= x && bounds[b + 1] <= bottom && bounds[b + 3] >= y;
+	}
+
+	/*
+	 * Children always have larger ids than their parent, so going from the last id
+	 * to the first finishes every subtree before the subtree of its parent.
+	 */
+	private void update() {
+		if(!stale)
+			return;
+		stale = false;
+		int n = layout.size;
+		if(count.length < n) {
+			int capacity = Math.max(n, count.length + (count.length >> 1));
+			count = new int[capacity];
+			levels = new int[capacity];
+			bounds = new double[capacity * 4];
+		}
+		for(int v = n - 1; v >= 0; v--) {
+			if(!layout.isNode(v))
+				continue;
+			int b = v * 4;
+			int total = 1;
+			int deepest = 0;
+			double minX = layout.x[v];
+			double minY = layout.y[v];
+			double maxX = minX + layout.width[v];
+			double maxY = minY + layout.height[v];
+			int[] children = layout.children[v];
+			for(int i = 0; i < layout.childCount[v]; i++) {
+				int c = children[i];
+				int cb = c * 4;
+				total += count[c];
+				deepest = Math.max(deepest, levels[c]);
+				minX = Math.min(minX, bounds[cb]);
+				minY = Math.min(minY, bounds[cb + 1]);
+				maxX = Math.max(maxX, bounds[cb + 2]);
+				maxY = Math.max(maxY, bounds[cb + 3]);
+			}
+			count[v] = total;
+			levels[v] = deepest + 1;
+			bounds[b] = minX;
+			bounds[b + 1] = minY;
+			bounds[b + 2] = maxX;
+			bounds[b + 3] = maxY;
+		}
+	}
+}
@@ -0,0 +1,311 @@
+package application;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Keeps the layout of a tree up to date while the tree changes.
+ * <p>
+ * Changes reported by the tree are collected until {@link #update()}. Only the
+ * ancestors of changed nodes are then arranged again, only nodes whose position
+ * changed are moved, and the canvas area they covered before and after the move is
+ * reported as a {@link DirtyRegion}. The ids of removed nodes are not reused; once
+ * more than half of the ids are free, the next update lays out the whole tree again.
+ * <p>
+ * The tree must only be changed on the thread that calls {@link #update()}.
+ */
+public class LiveLayout implements TreeListener<String> {
+
+	private static final int MOVED_FRACTION = 8;
+
+	private final Tree<String> tree;
+	private final TreeLayout engine;
+	private final LayoutResult result = new LayoutResult();
+	private final IdentityHashMap<Tree<String>, Integer> ids = new IdentityHashMap<Tree<String>, Integer>();
+	private LayoutIndex index;
+	private DirtyRegion collecting = new DirtyRegion();
+	private DirtyRegion reported = new DirtyRegion();
+	// Parents whose children must be arranged again, closed under ancestors.
+	private boolean[] queued = new boolean[0];
+	private int[] pending = new int[16];
+	private int pendingCount;
+	// Nodes whose label changed, to be repainted even if they did not move.
+	private int[] relabelled = new int[16];
+	private int relabelledCount;
+	private boolean full;
+	private int layoutCount;
+	private long changedSince;
+	private long lastUpdateNanos;
+	private Runnable onChange;
+
+	/**
+	 * Lays out a tree and starts following its changes.
+	 *
+	 * @param engine the layout engine, which must not be used for anything else
+	 */
+	public LiveLayout(Tree<String> tree, TreeLayout engine) {
+		this.tree = tree;
+		this.engine = engine;
+		engine.setRecording(true);
+		layoutAll();
+		tree.addTreeListener(this);
+	}
+
+	/**
+	 * Stops following the tree.
+	 */
+	public void dispose() {
+		tree.removeTreeListener(this);
+	}
+
+	public LayoutResult getResult() {
+		return result;
+	}
+
+	/**
+	 * @return the tree node laid out as a node of the result
+	 */
+	public Tree<String> getNode(int id) {
+		return engine.node(id);
+	}
+
+	/**
+	 * @return the index over the result, which may be replaced by an update
+	 */
+	public LayoutIndex getIndex() {
+		return index;
+	}
+
+	/**
+	 * Sets an action to run on the first change after an update, typically to
+	 * schedule the next update. It runs on the thread that changed the tree.
+	 */
+	public void setOnChange(Runnable onChange) {
+		this.onChange = onChange;
+	}
+
+	/**
+	 * @return the {@link System#nanoTime()} of the oldest change not yet handled by
+	 *         an update, or 0 if there is none
+	 */
+	public long getChangedSince() {
+		return changedSince;
+	}
+
+	/**
+	 * @return how many times the whole tree was laid out anew, which is the only
+	 *         time the ids of nodes that were not added or removed change
+	 */
+	public int getLayoutCount() {
+		return layoutCount;
+	}
+
+	/**
+	 * @return how long the last update took, in nanoseconds
+	 */
+	public long getLastUpdateNanos() {
+		return lastUpdateNanos;
+	}
+
+	/**
+	 * Brings the layout up to date with the changes made since the last update.
+	 *
+	 * @return the area to repaint, valid until the next update
+	 */
+	public DirtyRegion update() {
+		long start = System.nanoTime();
+		DirtyRegion dirty = collecting;
+		collecting = reported;
+		collecting.clear();
+		reported = dirty;
+
+		if(full || result.size - result.nodeCount > result.nodeCount) {
+			layoutAll();
+			dirty.addAll();
+		}
+		else if(pendingCount > 0) {
+			engine.rearrange(pending, pendingCount);
+			int moved = engine.reposition();
+			// Moving a node one at a time costs more than filling it in with the rest.
+			if(moved >= 0 && moved <= result.nodeCount / MOVED_FRACTION)
+				move(engine.moved(), moved, dirty);
+			else {
+				engine.refill();
+				index = new LayoutIndex(result);
+				dirty.addAll();
+			}
+		}
+		if(!dirty.isAll())
+			repaintRelabelled(dirty);
+		relabelledCount = 0;
+
+		for(int i = 0; i < pendingCount; i++)
+			queued[pending[i]] = false;
+		pendingCount = 0;
+		full = false;
+		changedSince = 0;
+		lastUpdateNanos = System.nanoTime() - start;
+		return dirty;
+	}
+
+	private void layoutAll() {
+		engine.layout(tree, result);
+		ids.clear();
+		for(int v = 0; v < result.size; v++)
+			ids.put(engine.node(v), v);
+		index = new LayoutIndex(result);
+		queued = new boolean[result.size];
+		pendingCount = 0;
+		layoutCount++;
+	}
+
+	private void move(int[] moved, int count, DirtyRegion dirty) {
+		for(int i = 0; i < count; i++)
+			addArea(moved[i], dirty);
+		engine.commit();
+		for(int i = 0; i < count; i++) {
+			int v = moved[i];
+			addArea(v, dirty);
+			index.updateNode(v);
+			index.updateFan(v);
+			if(result.parent[v] >= 0)
+				index.updateFan(result.parent[v]);
+		}
+		// Parents that gained or lost children have a different fan even if nothing moved.
+		for(int i = 0; i < pendingCount; i++)
+			index.updateFan(pending[i]);
+		if(index.isOutgrown())
+			index = new LayoutIndex(result);
+	}
+
+	/*
+	 * A box that changed size without moving still has to be drawn, and its lines
+	 * start from a different point when levels are columns.
+	 */
+	private void repaintRelabelled(DirtyRegion dirty) {
+		for(int i = 0; i < relabelledCount; i++) {
+			int v = relabelled[i];
+			if(!result.isNode(v))
+				continue;
+			addArea(v, dirty);
+			index.updateNode(v);
+			index.updateFan(v);
+			if(result.parent[v] >= 0)
+				index.updateFan(result.parent[v]);
+		}
+	}
+
+	/*
+	 * Adds the box of a node, the line from its parent and the lines to its children.
+	 * Nodes that have not been positioned yet are skipped.
+	 */
+	private void addArea(int v, DirtyRegion dirty) {
+		LayoutResult r = result;
+		dirty.add(r.x[v], r.y[v], r.x[v] + r.width[v], r.y[v] + r.height[v]);
+		int p = r.parent[v];
+		if(p >= 0)
+			dirty.add(r.edgeStartX(p), r.edgeStartY(p), r.edgeEndX(v), r.edgeEndY(v));
+
+		// New children are always last, so the positioned ones come first.
+		int last = r.childCount[v] - 1;
+		while(last >= 0 && Double.isNaN(r.x[r.children[v][last]]))
+			last--;
+		if(last >= 0) {
+			int first = r.children[v][0];
+			int end = r.children[v][last];
+			dirty.add(Math.min(r.edgeStartX(v), Math.min(r.edgeEndX(first), r.edgeEndX(end))),
+					Math.min(r.edgeStartY(v), Math.min(r.edgeEndY(first), r.edgeEndY(end))),
+					Math.max(r.edgeStartX(v), Math.max(r.edgeEndX(first), r.edgeEndX(end))),
+					Math.max(r.edgeStartY(v), Math.max(r.edgeEndY(first), r.edgeEndY(end))));
+		}
+	}
+
+	private void queue(int p) {
+		if(queued.length < result.size)
+			queued = Arrays.copyOf(queued, Math.max(result.size, queued.length * 2));
+		for(int t = p; t >= 0 && !queued[t]; t = result.parent[t]) {
+			queued[t] = true;
+			if(pendingCount == pending.length)
+				pending = Arrays.copyOf(pending, pendingCount * 2);
+			pending[pendingCount++] = t;
+		}
+	}
+
+	private void changed() {
+		if(changedSince != 0)
+			return;
+		changedSince = System.nanoTime();
+		if(onChange != null)
+			onChange.run();
+	}
+
+	@Override
+	public void nodeAdded(Tree<String> node) {
+		changed();
+		if(full)
+			return;
+		Tree<String> parent = node.getParent();
+		Integer p = parent == null ? null : ids.get(parent);
+		if(p == null || node.hasChildren()) {
+			// A new root, or a node added somewhere this layout does not know about.
+			full = true;
+			return;
+		}
+		int v = engine.addNode(p, node);
+		ids.put(node, v);
+		queue(p);
+	}
+
+	@Override
+	public void nodeRemoved(Tree<String> parent, Tree<String> node) {
+		changed();
+		if(full)
+			return;
+		Integer id = ids.get(node);
+		if(id == null) {
+			full = true;
+			return;
+		}
+		int v = id;
+		int p = result.parent[v];
+		collecting.add(result.edgeStartX(p), result.edgeStartY(p), result.edgeEndX(v), result.edgeEndY(v));
+		engine.detach(v);
+		queue(p);
+
+		int[] stack = { v };
+		int size = 1;
+		while(size > 0) {
+			int s = stack[--size];
+			addArea(s, collecting);
+			index.remove(s);
+			ids.remove(engine.node(s));
+			int count = result.childCount[s];
+			if(count > 0) {
+				if(size + count > stack.length)
+					stack = Arrays.copyOf(stack, Math.max(size + count, stack.length * 2));
+				System.arraycopy(result.children[s], 0, stack, size, count);
+				size += count;
+			}
+			engine.free(s);
+		}
+	}
+
+	@Override
+	public void nodeChanged(Tree<String> node) {
+		changed();
+		if(full)
+			return;
+		Integer id = ids.get(node);
+		if(id == null)
+			return;
+		int v = id;
+		addArea(v, collecting);
+		if(engine.relabel(v, node.getData())) {
+			// A wider or narrower box pushes its neighbours along the level.
+			queue(result.parent[v] >= 0 ? result.parent[v] : v);
+		}
+		if(relabelledCount == relabelled.length)
+			relabelled = Arrays.copyOf(relabelled, relabelledCount * 2);
+		relabelled[relabelledCount++] = v;
+	}
+}
@@ -0,0 +1,11 @@
+package application;
+
+/**
+ * The direction in which the levels of a tree are laid out.
+ */
+public enum Orientation {
+	/** Each level is a row; children are drawn below their parent. */
+	HORIZONTAL,
+	/** Each level is a column; children are drawn to the right of their parent. */
+	VERTICAL
+}
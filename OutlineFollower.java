@@ -0,0 +1,246 @@
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import javafx.animation.AnimationTimer;
+
+/**
+ * Grows a tree from an outline that is still being written, such as a log file or
+ * the output of another program.
+ * <p>
+ * A background thread reads the outline and parses each chunk of complete lines
+ * into a {@link ConcurrentTree} as one batch. A file is read from the start and then
+ * watched for more lines, like {@code tail -f}; a stream is read until it ends. On
+ * the JavaFX application thread, the nodes of the latest {@link #snapshot()
+ * snapshot} are copied into the {@link Tree} of the view at most
+ * {@link #getFrameRate()} times a second, so a {@link LiveLayout} of the tree is
+ * updated and repainted once per batch rather than once per line. Copying stops
+ * after {@value #FRAME_BUDGET_MILLIS} ms and the nodes left over wait for the next
+ * batch, so a fast source cannot stall the application thread.
+ */
+public class OutlineFollower implements Closeable {
+
+	public static final double DEFAULT_FRAME_RATE = 30;
+	/** How long one batch may add lines for, in milliseconds. */
+	public static final long FRAME_BUDGET_MILLIS = 8;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	// How often the clock is checked while a batch is added.
+	private static final int NODES_PER_CHECK = 256;
+	private static final long POLL_MILLIS = 100;
+
+	// Written by the reader thread only.
+	private final ConcurrentTree<String> parsed = new ConcurrentTree<String>("");
+	private final OutlineParser parser = new OutlineParser(parsed);
+	private final ReadableByteChannel channel;
+	private final boolean tail;
+	private final Thread reader;
+	private AnimationTimer timer;
+	private final Tree<String> tree = new Tree<String>("");
+	// The node of the tree for each handle of the parsed tree copied so far.
+	private final ArrayList<Tree<String>> nodes = new ArrayList<Tree<String>>();
+	private volatile int copied = 1;
+	private long frameIntervalNanos = (long) (1e9 / DEFAULT_FRAME_RATE);
+	private long lastFrame;
+	private volatile boolean closed;
+	private volatile IOException failure;
+
+	/**
+	 * Follows an outline file, starting with the lines it already has.
+	 */
+	public OutlineFollower(Path path) throws IOException {
+		this(FileChannel.open(path, StandardOpenOption.READ), true, path.toString());
+	}
+
+	/**
+	 * Follows an outline stream until it ends, such as {@code System.in}.
+	 */
+	public OutlineFollower(InputStream in) {
+		this(Channels.newChannel(in), false, "stream");
+	}
+
+	private OutlineFollower(ReadableByteChannel channel, boolean tail, String name) {
+		this.channel = channel;
+		this.tail = tail;
+		nodes.add(tree);
+		reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				read();
+			}
+		}, "outline-follow " + name);
+		reader.setDaemon(true);
+	}
+
+	/**
+	 * @return the tree the outline is added to, which starts with an empty root
+	 */
+	public Tree<String> getTree() {
+		return tree;
+	}
+
+	/**
+	 * @return the outline as parsed so far, which may be ahead of {@link #getTree()}
+	 *         and can be read or laid out on any thread
+	 */
+	public ConcurrentTree.Snapshot<String> snapshot() {
+		return parsed.snapshot();
+	}
+
+	/**
+	 * Starts reading and adding lines. Must be called on the JavaFX application thread.
+	 */
+	public void start() {
+		timer = new AnimationTimer() {
+			@Override
+			public void handle(long now) {
+				if(now - lastFrame >= frameIntervalNanos) {
+					lastFrame = now;
+					addBatch();
+				}
+			}
+		};
+		reader.start();
+		timer.start();
+	}
+
+	public double getFrameRate() {
+		return 1e9 / frameIntervalNanos;
+	}
+
+	/**
+	 * @param frameRate how many batches of lines may be added per second
+	 */
+	public void setFrameRate(double frameRate) {
+		if(frameRate <= 0)
+			throw new IllegalArgumentException("Frame rate must be positive: " + frameRate);
+		frameIntervalNanos = (long) (1e9 / frameRate);
+	}
+
+	/**
+	 * @return the number of nodes added under the root of the tree so far
+	 */
+	public int getAddedCount() {
+		return copied - 1;
+	}
+
+	/**
+	 * @return the number of nodes parsed but not added to the tree yet
+	 */
+	public int getPendingCount() {
+		return parsed.size() - copied;
+	}
+
+	/**
+	 * @return the error that stopped reading, or {@code null}
+	 */
+	public IOException getFailure() {
+		return failure;
+	}
+
+	/**
+	 * Adds the nodes parsed since the last batch to the tree, for as long as the
+	 * frame budget allows. Called by the timer on the JavaFX application thread.
+	 * <p>
+	 * Nodes are never removed from the parsed tree, and handles are given out in the
+	 * order lines are parsed, so every new handle's parent has been copied before it.
+	 */
+	void addBatch() {
+		ConcurrentTree.Snapshot<String> snapshot = parsed.snapshot();
+		String rootLabel = snapshot.getData(0);
+		if(!rootLabel.equals(tree.getData()))
+			tree.setData(rootLabel);
+		int size = snapshot.size();
+		int node = copied;
+		if(node == size)
+			return;
+		long deadline = System.nanoTime() + FRAME_BUDGET_MILLIS * 1000000;
+		nodes.ensureCapacity(size);
+		while(node < size) {
+			Tree<String> parent = nodes.get(snapshot.getParent(node));
+			nodes.add(parent.addNode(snapshot.getData(node)));
+			node++;
+			if(node % NODES_PER_CHECK == 0 && System.nanoTime() > deadline)
+				break;
+		}
+		copied = node;
+	}
+
+	private void read() {
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+		StringBuilder line = new StringBuilder();
+		try {
+			while(!closed) {
+				int read = channel.read(bytes);
+				if(read < 0 && !tail)
+					break;
+				if(read <= 0) {
+					Thread.sleep(POLL_MILLIS);
+					continue;
+				}
+				bytes.flip();
+				CoderResult result = decoder.decode(bytes, chars, false);
+				if(result.isError())
+					result.throwException();
+				bytes.compact();
+				chars.flip();
+				parsed.beginBatch();
+				try {
+					while(chars.hasRemaining()) {
+						char c = chars.get();
+						if(c != '\n') {
+							line.append(c);
+							continue;
+						}
+						int length = line.length();
+						if(length > 0 && line.charAt(length - 1) == '\r')
+							line.setLength(length - 1);
+						parser.accept(line);
+						line.setLength(0);
+					}
+				} finally {
+					parsed.endBatch();
+				}
+				chars.clear();
+			}
+			// A stream that ended may leave a last line without a terminator.
+			if(!closed && line.length() > 0)
+				parser.accept(line);
+		} catch (InterruptedException e) {
+			// Closed while waiting for more lines.
+		} catch (IOException e) {
+			if(!closed)
+				failure = e;
+		}
+	}
+
+	/**
+	 * Stops reading and adding lines. Nodes already added stay in the tree.
+	 */
+	@Override
+	public void close() throws IOException {
+		closed = true;
+		if(timer != null)
+			timer.stop();
+		reader.interrupt();
+		channel.close();
+	}
+}
@@ -0,0 +1,205 @@
+package application;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * An index over the lines of a tab-indented outline file, for outlines too large to
+ * hold as {@code Tree} objects.
+ * <p>
+ * Building the index scans the file once through memory-mapped windows and keeps
+ * three numbers per node: the byte offset of its line, its depth, and the end of its
+ * subtree. Nodes are numbered in file order, which is a pre-order of the tree, so
+ * the subtree of node {@code n} is the range {@code n} to {@code getEnd(n)} and its
+ * children are found by skipping from one subtree to the next:
+ *
+ * <pre>
+ * for(int c = n + 1; c &lt; index.getEnd(n); c = index.getEnd(c))
+ * </pre>
+ *
+ * Labels are not kept; {@link #getLabel(int)} reads them from the file when needed.
+ * Lines are attached the same way {@link OutlineParser} attaches them, so
+ * materializing every node gives the same tree as parsing the file.
+ */
+public class OutlineIndex implements Closeable {
+
+	private static final long WINDOW_SIZE = 1L << 30;
+
+	private final FileChannel channel;
+	private long[] offsets = new long[1024];
+	private int[] depths = new int[1024];
+	private int[] ends = new int[1024];
+	private int size;
+	private ByteBuffer line = ByteBuffer.allocate(256);
+
+	// Parse state: the open ancestors of the next line and their indentation.
+	private int[] stack = new int[64];
+	private int[] levels = new int[64];
+	private int stackSize;
+
+	private OutlineIndex(FileChannel channel) {
+		this.channel = channel;
+	}
+
+	/**
+	 * Indexes an outline file. The file stays open until the index is closed and must
+	 * not change in the meantime.
+	 */
+	public static OutlineIndex build(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			OutlineIndex index = new OutlineIndex(channel);
+			index.scan();
+			return index;
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/*
+	 * A line counts if anything but its line terminator is left, as in OutlineParser.
+	 */
+	private void scan() throws IOException {
+		long fileSize = channel.size();
+		long lineStart = 0;
+		int tabs = 0;
+		boolean indent = true;
+		long length = 0;
+		boolean carriageReturn = false;
+		for(long windowStart = 0; windowStart < fileSize; windowStart += WINDOW_SIZE) {
+			long windowSize = Math.min(WINDOW_SIZE, fileSize - windowStart);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowSize);
+			for(int i = 0; i < windowSize; i++) {
+				byte b = window.get(i);
+				if(b == '\n') {
+					if(length - (carriageReturn ? 1 : 0) > 0)
+						add(lineStart, tabs);
+					lineStart = windowStart + i + 1;
+					tabs = 0;
+					indent = true;
+					length = 0;
+					carriageReturn = false;
+					continue;
+				}
+				if(indent && b == '\t')
+					tabs++;
+				else
+					indent = false;
+				length++;
+				carriageReturn = b == '\r';
+			}
+		}
+		if(length > 0)
+			add(lineStart, tabs);
+		while(stackSize > 0)
+			ends[stack[--stackSize]] = size;
+	}
+
+	private void add(long offset, int level) {
+		if(size > 0 && level == 0) {
+			// A later line without indent renames the root, and what follows goes under it.
+			offsets[0] = offset;
+			while(stackSize > 1)
+				ends[stack[--stackSize]] = size;
+			return;
+		}
+		if(size == offsets.length) {
+			int capacity = size + (size >> 1);
+			offsets = Arrays.copyOf(offsets, capacity);
+			depths = Arrays.copyOf(depths, capacity);
+			ends = Arrays.copyOf(ends, capacity);
+		}
+		int node = size++;
+		offsets[node] = offset;
+		if(node == 0) {
+			depths[0] = 0;
+			push(0, 0);
+			return;
+		}
+		while(stackSize > 1 && levels[stackSize - 1] >= level)
+			ends[stack[--stackSize]] = node;
+		depths[node] = depths[stack[stackSize - 1]] + 1;
+		push(node, level);
+	}
+
+	private void push(int node, int level) {
+		if(stackSize == stack.length) {
+			stack = Arrays.copyOf(stack, stackSize * 2);
+			levels = Arrays.copyOf(levels, stackSize * 2);
+		}
+		stack[stackSize] = node;
+		levels[stackSize++] = level;
+	}
+
+	/**
+	 * @return the number of nodes, 0 for a file without lines
+	 */
+	public int size() {
+		return size;
+	}
+
+	public int getDepth(int node) {
+		return depths[node];
+	}
+
+	/**
+	 * @return the node after the last node of the subtree of a node
+	 */
+	public int getEnd(int node) {
+		return ends[node];
+	}
+
+	public boolean hasChildren(int node) {
+		return ends[node] > node + 1;
+	}
+
+	/**
+	 * Reads the label of a node from the file, without its indent or other tabs.
+	 */
+	public String getLabel(int node) throws IOException {
+		long position = offsets[node];
+		line.clear();
+		int newline = -1;
+		while(newline < 0) {
+			if(!line.hasRemaining()) {
+				ByteBuffer larger = ByteBuffer.allocate(line.capacity() * 2);
+				line.flip();
+				larger.put(line);
+				line = larger;
+			}
+			int read = channel.read(line, position + line.position());
+			int from = line.position() - Math.max(read, 0);
+			for(int i = from; i < line.position(); i++) {
+				if(line.get(i) == '\n') {
+					newline = i;
+					break;
+				}
+			}
+			if(read < 0)
+				break;
+		}
+		int end = newline >= 0 ? newline : line.position();
+		byte[] bytes = line.array();
+		if(end > 0 && bytes[end - 1] == '\r')
+			end--;
+		int length = 0;
+		for(int i = 0; i < end; i++) {
+			if(bytes[i] != '\t')
+				bytes[length++] = bytes[i];
+		}
+		return new String(bytes, 0, length, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -0,0 +1,334 @@
+package application;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass parser for tab-indented tree outlines.
+ * <p>
+ * The root of the tree must be at the first line of the input with no indents.
+ * Each level of the tree is marked by a TAB (\t) character only. A line is attached
+ * to the closest preceding line with fewer leading tabs, which is found with an
+ * indentation stack so every line is handled in constant time.
+ * <p>
+ * Lines can also be fed one at a time through {@link #accept(CharSequence)}, which
+ * is how the parser is used on inputs that are still being written. A parser made
+ * with {@link #OutlineParser(ConcurrentTree)} adds them to a {@link ConcurrentTree}
+ * instead, so that another thread can read the tree while lines are parsed.
+ * <p>
+ * {@link #parseCompact(Path)} reads an outline into a {@link CompactTree} instead,
+ * for outlines that are only laid out and exported. A parser makes one kind of tree.
+ */
+public class OutlineParser {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private Tree<String> tree;
+	private final List<Tree<String>> stack = new ArrayList<Tree<String>>();
+	private boolean compact;
+	private CompactTree<String> compactTree;
+	private final ConcurrentTree<String> concurrentTree;
+	// The handles of the compact tree's nodes on the indentation stack.
+	private int[] handles = new int[16];
+	private int handleCount;
+	private int[] levels = new int[16];
+	private char[] line = new char[256];
+	private int lineLength;
+	private long lineCount;
+	private long elapsedNanos;
+
+	public OutlineParser() {
+		concurrentTree = null;
+	}
+
+	/**
+	 * Makes a parser that adds the lines given to {@link #accept(CharSequence)} to an
+	 * existing tree. The first line and every line without indents relabel its root.
+	 * Such a parser only accepts lines; its parse methods throw
+	 * {@link IllegalStateException}.
+	 */
+	public OutlineParser(ConcurrentTree<String> tree) {
+		concurrentTree = tree;
+	}
+
+	/**
+	 * Parses the outline stored in a file.
+	 *
+	 * @param  path the file to read
+	 * @return      the parsed tree
+	 */
+	public Tree<String> parse(Path path) throws IOException {
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return parse(channel);
+		}
+	}
+
+	/**
+	 * Parses a UTF-8 encoded outline from a channel until end of stream.
+	 * The channel is not closed.
+	 *
+	 * @param  channel the source of the outline
+	 * @return         the parsed tree
+	 */
+	public Tree<String> parse(ReadableByteChannel channel) throws IOException {
+		if(concurrentTree != null)
+			throw new IllegalStateException("This parser adds to a ConcurrentTree");
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.PARSE);
+		try {
+			read(channel);
+			return getTree();
+		} finally {
+			span.nodes(lineCount).end();
+		}
+	}
+
+	/**
+	 * Parses the outline stored in a file into array-backed storage.
+	 *
+	 * @param  path the file to read
+	 * @return      the parsed tree
+	 * @throws IllegalStateException if this parser has already made a {@link Tree}
+	 */
+	public CompactTree<String> parseCompact(Path path) throws IOException {
+		if(concurrentTree != null)
+			throw new IllegalStateException("This parser adds to a ConcurrentTree");
+		if(tree != null)
+			throw new IllegalStateException("This parser already made a Tree");
+		compact = true;
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.PARSE);
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			read(channel);
+			if(compactTree == null)
+				compactTree = new CompactTree<String>("");
+			return compactTree;
+		} finally {
+			span.nodes(lineCount).end();
+		}
+	}
+
+	private void read(ReadableByteChannel channel) throws IOException {
+		long start = System.nanoTime();
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		ByteBuffer bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		CharBuffer chars = CharBuffer.allocate(BUFFER_SIZE);
+
+		boolean eof = false;
+		boolean done = false;
+		while(!done) {
+			if(!eof)
+				eof = channel.read(bytes) < 0;
+			bytes.flip();
+			CoderResult result = decoder.decode(bytes, chars, eof);
+			if(result.isError())
+				result.throwException();
+			done = eof && !result.isOverflow();
+			if(done)
+				decoder.flush(chars);
+			bytes.compact();
+			chars.flip();
+			scan(chars);
+			chars.clear();
+		}
+		if(lineLength > 0)
+			endLine();
+
+		elapsedNanos += System.nanoTime() - start;
+	}
+
+	private void scan(CharBuffer chars) {
+		char[] array = chars.array();
+		int end = chars.arrayOffset() + chars.limit();
+		for(int i = chars.arrayOffset() + chars.position(); i < end; i++) {
+			char c = array[i];
+			if(c == '\n') {
+				endLine();
+			}
+			else {
+				if(lineLength == line.length)
+					line = Arrays.copyOf(line, lineLength * 2);
+				line[lineLength++] = c;
+			}
+		}
+	}
+
+	private void endLine() {
+		int length = lineLength;
+		if(length > 0 && line[length - 1] == '\r')
+			length--;
+		lineLength = 0;
+		if(length > 0)
+			add(line, length);
+	}
+
+	/**
+	 * Adds a single line of the outline to the tree. The line must not contain
+	 * line terminators. Empty lines are ignored.
+	 */
+	public void accept(CharSequence text) {
+		int length = text.length();
+		if(length == 0)
+			return;
+		char[] chars = length <= line.length ? line : new char[length];
+		for(int i = 0; i < length; i++)
+			chars[i] = text.charAt(i);
+		add(chars, length);
+	}
+
+	private void add(char[] chars, int length) {
+		lineCount++;
+
+		int level = 0;
+		while(level < length && chars[level] == '\t')
+			level++;
+		String label = label(chars, level, length);
+		if(compact) {
+			addCompact(label, level);
+			return;
+		}
+		if(concurrentTree != null) {
+			addConcurrent(label, level);
+			return;
+		}
+
+		if(tree == null) {
+			tree = new Tree<String>(label);
+			push(tree, 0);
+			return;
+		}
+		if(level == 0) {
+			tree.setData(label);
+			stack.clear();
+			push(tree, 0);
+			return;
+		}
+
+		int top = stack.size() - 1;
+		while(top > 0 && levels[top] >= level)
+			stack.remove(top--);
+		push(stack.get(top).addNode(label), level);
+	}
+
+	private void addCompact(String label, int level) {
+		if(compactTree == null)
+			compactTree = new CompactTree<String>(label);
+		else if(level == 0)
+			compactTree.setData(0, label);
+		else {
+			while(handleCount > 1 && levels[handleCount - 1] >= level)
+				handleCount--;
+			int node = compactTree.addNode(handles[handleCount - 1], label);
+			pushHandle(node, level);
+			return;
+		}
+		handleCount = 0;
+		pushHandle(0, 0);
+	}
+
+	/*
+	 * The root already exists, so the first line relabels it like a line without
+	 * indents does.
+	 */
+	private void addConcurrent(String label, int level) {
+		if(handleCount > 0 && level > 0) {
+			while(handleCount > 1 && levels[handleCount - 1] >= level)
+				handleCount--;
+			pushHandle(concurrentTree.addNode(handles[handleCount - 1], label), level);
+			return;
+		}
+		concurrentTree.setData(0, label);
+		handleCount = 0;
+		pushHandle(0, 0);
+	}
+
+	private void pushHandle(int node, int level) {
+		if(handleCount == levels.length)
+			levels = Arrays.copyOf(levels, handleCount * 2);
+		if(handleCount == handles.length)
+			handles = Arrays.copyOf(handles, handleCount * 2);
+		levels[handleCount] = level;
+		handles[handleCount++] = node;
+	}
+
+	/*
+	 * Tabs anywhere in a line are not part of the label.
+	 */
+	private static String label(char[] chars, int from, int to) {
+		int tab = from;
+		while(tab < to && chars[tab] != '\t')
+			tab++;
+		if(tab == to)
+			return new String(chars, from, to - from);
+
+		StringBuilder sb = new StringBuilder(to - from);
+		for(int i = from; i < to; i++) {
+			if(chars[i] != '\t')
+				sb.append(chars[i]);
+		}
+		return sb.toString();
+	}
+
+	private void push(Tree<String> node, int level) {
+		int top = stack.size();
+		if(top == levels.length)
+			levels = Arrays.copyOf(levels, top * 2);
+		levels[top] = level;
+		stack.add(node);
+	}
+
+	/**
+	 * @return the tree parsed so far, or a tree with an empty root if no lines were read
+	 */
+	public Tree<String> getTree() {
+		if(tree == null)
+			tree = new Tree<String>("");
+		return tree;
+	}
+
+	public long getLineCount() {
+		return lineCount;
+	}
+
+	public long getElapsedNanos() {
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return the number of lines parsed per second of time spent in {@link #parse}
+	 */
+	public double getLinesPerSecond() {
+		if(elapsedNanos == 0)
+			return 0;
+		return lineCount * 1e9 / elapsedNanos;
+	}
+
+	/**
+	 * Parses each file given on the command line and reports the parse throughput.
+	 */
+	public static void main(String[] args) throws IOException {
+		if(args.length == 0) {
+			System.err.println("Usage: java application.OutlineParser <outline file>...");
+			System.exit(1);
+		}
+		for(String arg : args) {
+			OutlineParser parser = new OutlineParser();
+			parser.parse(Paths.get(arg));
+			System.out.printf("%s: %,d lines in %.1f ms (%,.0f lines/s)%n", arg, parser.getLineCount(),
+					parser.getElapsedNanos() / 1e6, parser.getLinesPerSecond());
+		}
+	}
+}
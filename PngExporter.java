@@ -0,0 +1,54 @@
+package application;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+
+/**
+ * Renders a layout to a PNG file with Java2D, without a JavaFX toolkit or a display.
+ * <p>
+ * The image is drawn in tiles on several threads by a {@link TiledRenderer}, and
+ * streamed to a {@link PngWriter} that compresses with the configured level on as
+ * many threads.
+ */
+public class PngExporter implements TreeExporter {
+
+	private final int compressionLevel;
+	private final int threads;
+
+	public PngExporter() {
+		this(Deflater.DEFAULT_COMPRESSION, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param compressionLevel a {@link Deflater} compression level
+	 * @param threads          the number of threads that draw, and that compress, at
+	 *                         the same time
+	 */
+	public PngExporter(int compressionLevel, int threads) {
+		this.compressionLevel = compressionLevel;
+		this.threads = threads;
+	}
+
+	@Override
+	public void export(LayoutResult layout, File file, Progress progress) throws IOException {
+		int width = (int) Math.ceil(layout.getCanvasWidth());
+		int height = (int) Math.ceil(layout.getCanvasHeight());
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.EXPORT).nodes(layout.getNodeCount());
+		try {
+			write(layout, file, progress, width, height);
+			span.pixels((long) width * height).bytes(file.length());
+		} finally {
+			span.end();
+		}
+	}
+
+	private void write(LayoutResult layout, File file, Progress progress, int width, int height) throws IOException {
+		try(PngWriter png = new PngWriter(new BufferedOutputStream(new FileOutputStream(file), 1 << 16),
+				width, height, compressionLevel, threads)) {
+			new TiledRenderer(layout, width, height, TiledRenderer.DEFAULT_TILE_SIZE, threads).render(png, progress);
+		}
+	}
+}
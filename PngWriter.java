@@ -0,0 +1,370 @@
+package application;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes an 8-bit RGBA PNG one band of rows at a time, so an image can be encoded
+ * without ever holding all of its pixels in memory.
+ * <p>
+ * Rows must be written top to bottom until exactly {@code height} rows have been
+ * written, then the writer must be closed.
+ * <p>
+ * With more than one thread, rows are collected into segments of about a megabyte
+ * that are compressed in parallel, the way pigz does: every segment is deflated on
+ * its own, primed with the last 32 KB of the segment before it, and ends on a byte
+ * boundary, so the compressed segments simply follow each other in one zlib stream.
+ * The result is a little larger than a sequentially compressed image.
+ */
+public class PngWriter implements Closeable {
+
+	private static final byte[] SIGNATURE = { (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n' };
+	private static final int IDAT_SIZE = 1 << 16;
+	private static final int SEGMENT_SIZE = 1 << 20;
+	private static final int WINDOW_SIZE = 1 << 15;
+
+	private final OutputStream out;
+	private final int width;
+	private final int height;
+	private final int level;
+	private final byte[] row;
+	private int rowsWritten;
+
+	// Sequential compression
+	private final Deflater deflater;
+	private final DeflaterOutputStream idat;
+
+	// Parallel compression
+	private final ExecutorService pool;
+	private final int maxPending;
+	private final ArrayDeque<Future<Segment>> pending = new ArrayDeque<Future<Segment>>();
+	private final ChunkOutputStream chunks;
+	private byte[] segment;
+	private int segmentLength;
+	private byte[] dictionary;
+	private long adler = 1;
+
+	public PngWriter(OutputStream out, int width, int height) throws IOException {
+		this(out, width, height, Deflater.DEFAULT_COMPRESSION, 1);
+	}
+
+	/**
+	 * @param level   the compression level, from {@link Deflater#NO_COMPRESSION} to
+	 *                {@link Deflater#BEST_COMPRESSION}, or
+	 *                {@link Deflater#DEFAULT_COMPRESSION}
+	 * @param threads the number of threads that compress at the same time
+	 */
+	public PngWriter(OutputStream out, int width, int height, int level, int threads) throws IOException {
+		if(width <= 0 || height <= 0)
+			throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+		if((level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) && level != Deflater.DEFAULT_COMPRESSION)
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		this.out = out;
+		this.width = width;
+		this.height = height;
+		this.level = level;
+		this.row = new byte[1 + width * 4];
+		if(threads > 1) {
+			this.deflater = null;
+			this.idat = null;
+			this.pool = Executors.newFixedThreadPool(threads, daemonThreads());
+			this.maxPending = 2 * threads;
+			this.chunks = new ChunkOutputStream(out);
+			this.segment = new byte[Math.max(1, SEGMENT_SIZE / row.length) * row.length];
+		}
+		else {
+			this.deflater = new Deflater(level);
+			this.idat = new DeflaterOutputStream(new ChunkOutputStream(out), deflater, IDAT_SIZE);
+			this.pool = null;
+			this.maxPending = 0;
+			this.chunks = null;
+		}
+
+		out.write(SIGNATURE);
+		byte[] header = new byte[13];
+		putInt(header, 0, width);
+		putInt(header, 4, height);
+		header[8] = 8;	// bit depth
+		header[9] = 6;	// color type: RGBA
+		writeChunk(out, "IHDR", header, header.length);
+	}
+
+	/**
+	 * Writes the next rows of the image.
+	 *
+	 * @param argb   pixels as non-premultiplied ARGB ints
+	 * @param offset the index of the first pixel of the first row
+	 * @param stride the distance between the first pixels of two consecutive rows
+	 * @param rows   the number of rows to write
+	 */
+	public void writeRows(int[] argb, int offset, int stride, int rows) throws IOException {
+		if(rowsWritten + rows > height)
+			throw new IllegalStateException("Image has only " + height + " rows");
+		for(int y = 0; y < rows; y++) {
+			int p = offset + y * stride;
+			if(pool == null) {
+				toRow(argb, p, row, 0);
+				idat.write(row);
+				continue;
+			}
+			toRow(argb, p, segment, segmentLength);
+			segmentLength += row.length;
+			// The last segment is only compressed on close, when the stream is finished.
+			if(segmentLength == segment.length && rowsWritten + y + 1 < height)
+				submit(false);
+		}
+		rowsWritten += rows;
+	}
+
+	private void toRow(int[] argb, int p, byte[] row, int i) {
+		row[i++] = 0;	// filter: none
+		for(int x = 0; x < width; x++) {
+			int pixel = argb[p + x];
+			row[i++] = (byte) (pixel >> 16);
+			row[i++] = (byte) (pixel >> 8);
+			row[i++] = (byte) pixel;
+			row[i++] = (byte) (pixel >>> 24);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if(rowsWritten != height)
+				throw new IllegalStateException("Wrote " + rowsWritten + " of " + height + " rows");
+			if(pool == null) {
+				idat.finish();
+				idat.flush();
+			}
+			else {
+				submit(true);
+				while(!pending.isEmpty())
+					writeSegment();
+				byte[] trailer = new byte[4];
+				putInt(trailer, 0, (int) adler);
+				chunks.write(trailer);
+				chunks.flush();
+			}
+			writeChunk(out, "IEND", new byte[0], 0);
+			out.flush();
+		} finally {
+			if(pool == null)
+				deflater.end();
+			else
+				pool.shutdownNow();
+			out.close();
+		}
+	}
+
+	/*
+	 * Hands the collected rows to the pool and starts a new segment.
+	 */
+	private void submit(final boolean last) throws IOException {
+		if(dictionary == null)
+			chunks.write(zlibHeader(level));
+		final byte[] data = segment;
+		final int length = segmentLength;
+		final byte[] preset = dictionary;
+		final int compressionLevel = level;
+		pending.add(pool.submit(new Callable<Segment>() {
+			@Override
+			public Segment call() {
+				return Segment.deflate(data, length, preset, compressionLevel, last);
+			}
+		}));
+		dictionary = Arrays.copyOfRange(data, Math.max(0, length - WINDOW_SIZE), length);
+		segment = new byte[data.length];
+		segmentLength = 0;
+		if(pending.size() >= maxPending)
+			writeSegment();
+	}
+
+	private void writeSegment() throws IOException {
+		Segment done;
+		try {
+			done = pending.remove().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while compressing", e);
+		} catch (ExecutionException e) {
+			throw new IOException(e.getCause());
+		}
+		chunks.write(done.data, 0, done.length);
+		adler = combineAdler(adler, done.adler, done.rawLength);
+	}
+
+	private static byte[] zlibHeader(int level) {
+		int compressionLevel = level == Deflater.DEFAULT_COMPRESSION ? 6 : level;
+		int cmf = 0x78;	// deflate with a 32 KB window
+		int flg = (compressionLevel < 2 ? 0 : compressionLevel < 6 ? 1 : compressionLevel == 6 ? 2 : 3) << 6;
+		flg += 31 - (cmf * 256 + flg) % 31;
+		return new byte[] { (byte) cmf, (byte) flg };
+	}
+
+	/*
+	 * The Adler-32 of two consecutive pieces of data from the checksums of the pieces,
+	 * as in zlib's adler32_combine.
+	 */
+	static long combineAdler(long adler1, long adler2, long length2) {
+		final long base = 65521;
+		long rem = length2 % base;
+		long sum1 = adler1 & 0xFFFF;
+		long sum2 = rem * sum1 % base;
+		sum1 += (adler2 & 0xFFFF) + base - 1;
+		sum2 += ((adler1 >> 16) & 0xFFFF) + ((adler2 >> 16) & 0xFFFF) + base - rem;
+		if(sum1 >= base)
+			sum1 -= base;
+		if(sum1 >= base)
+			sum1 -= base;
+		if(sum2 >= base << 1)
+			sum2 -= base << 1;
+		if(sum2 >= base)
+			sum2 -= base;
+		return sum1 | sum2 << 16;
+	}
+
+	private static ThreadFactory daemonThreads() {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "png-deflate");
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	private static void putInt(byte[] b, int offset, int value) {
+		b[offset] = (byte) (value >>> 24);
+		b[offset + 1] = (byte) (value >>> 16);
+		b[offset + 2] = (byte) (value >>> 8);
+		b[offset + 3] = (byte) value;
+	}
+
+	private static void writeChunk(OutputStream out, String type, byte[] data, int length) throws IOException {
+		byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+		byte[] b = new byte[4];
+		putInt(b, 0, length);
+		out.write(b);
+		out.write(typeBytes);
+		out.write(data, 0, length);
+
+		CRC32 crc = new CRC32();
+		crc.update(typeBytes);
+		crc.update(data, 0, length);
+		putInt(b, 0, (int) crc.getValue());
+		out.write(b);
+	}
+
+	/*
+	 * A compressed segment of rows and the checksum of its uncompressed bytes.
+	 */
+	private static class Segment {
+		byte[] data;
+		int length;
+		long adler;
+		int rawLength;
+
+		/*
+		 * All segments but the last end with a sync flush, which ends the deflate
+		 * block on a byte boundary without marking it as the final one.
+		 */
+		static Segment deflate(byte[] raw, int rawLength, byte[] dictionary, int level, boolean last) {
+			Segment segment = new Segment();
+			Adler32 checksum = new Adler32();
+			checksum.update(raw, 0, rawLength);
+			segment.adler = checksum.getValue();
+			segment.rawLength = rawLength;
+
+			Deflater deflater = new Deflater(level, true);
+			try {
+				if(dictionary != null)
+					deflater.setDictionary(dictionary);
+				deflater.setInput(raw, 0, rawLength);
+				if(last)
+					deflater.finish();
+				byte[] data = new byte[rawLength / 4 + 64];
+				int length = 0;
+				while(true) {
+					if(length == data.length)
+						data = Arrays.copyOf(data, data.length * 2);
+					int n = deflater.deflate(data, length, data.length - length,
+							last ? Deflater.NO_FLUSH : Deflater.SYNC_FLUSH);
+					length += n;
+					if(last ? deflater.finished() : length < data.length)
+						break;
+				}
+				segment.data = data;
+				segment.length = length;
+			} finally {
+				deflater.end();
+			}
+			return segment;
+		}
+	}
+
+	/*
+	 * Splits the compressed stream into IDAT chunks.
+	 */
+	private static class ChunkOutputStream extends FilterOutputStream {
+		private final byte[] buffer = new byte[IDAT_SIZE];
+		private int count;
+
+		ChunkOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if(count == buffer.length)
+				flushChunk();
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			while(len > 0) {
+				if(count == buffer.length)
+					flushChunk();
+				int n = Math.min(len, buffer.length - count);
+				System.arraycopy(b, off, buffer, count, n);
+				count += n;
+				off += n;
+				len -= n;
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			flushChunk();
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+		private void flushChunk() throws IOException {
+			if(count > 0) {
+				writeChunk(out, "IDAT", buffer, count);
+				count = 0;
+			}
+		}
+	}
+}
@@ -0,0 +1,281 @@
+package application;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Built-in timing of the stages a tree goes through: parsing, layout, metrics,
+ * drawing, snapshots and export.
+ * <p>
+ * Every run of a stage is a {@link Span}. Ending it commits a JFR event named
+ * {@code application.Stage}, which costs nothing unless a recording is running, and
+ * adds to counters and latency histograms published over JMX as
+ * {@value #OBJECT_NAME}, see {@link StageMetricsMXBean}. A run can be profiled with
+ * {@code -XX:StartFlightRecording} or watched in any JMX console without attaching a
+ * profiler. Stages may nest: an export includes the drawing it does.
+ * <p>
+ * Spans are meant for whole stages, not for single nodes; each one costs a small
+ * object and a few atomic additions.
+ */
+public final class StageMetrics {
+
+	public static final String OBJECT_NAME = "application:type=StageMetrics";
+
+	public enum Stage {
+		PARSE, LAYOUT, METRICS, DRAW, SNAPSHOT, EXPORT
+	}
+
+	private static final int BUCKETS = 32;
+	private static final Stage[] STAGES = Stage.values();
+	private static final LongAdder[] counts = new LongAdder[STAGES.length];
+	private static final LongAdder[] nanos = new LongAdder[STAGES.length];
+	private static final AtomicLongArray[] histograms = new AtomicLongArray[STAGES.length];
+	private static final AtomicLong nodeCount = new AtomicLong();
+	private static final LongAdder drawCalls = new LongAdder();
+	private static final LongAdder pixels = new LongAdder();
+	private static final LongAdder bytes = new LongAdder();
+
+	static {
+		for(int i = 0; i < STAGES.length; i++) {
+			counts[i] = new LongAdder();
+			nanos[i] = new LongAdder();
+			histograms[i] = new AtomicLongArray(BUCKETS);
+		}
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new Bean(), new ObjectName(OBJECT_NAME));
+		} catch (JMException | SecurityException e) {
+			// Another class loader registered it first; counting still works.
+		}
+	}
+
+	private StageMetrics() {
+	}
+
+	/**
+	 * Starts timing a run of a stage.
+	 */
+	public static Span begin(Stage stage) {
+		return new Span(stage);
+	}
+
+	/*
+	 * Entry i holds latencies below 2^i microseconds.
+	 */
+	static int bucket(long nanos) {
+		long micros = nanos / 1000;
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+	}
+
+	/**
+	 * One run of a stage, with what it handled. Quantities that do not apply to a
+	 * stage stay 0.
+	 */
+	public static final class Span {
+		private final Stage stage;
+		private final long start;
+		private final StageEvent event = new StageEvent();
+		private long nodes = -1;
+		private long drawCalls;
+		private long pixels;
+		private long bytes;
+
+		Span(Stage stage) {
+			this.stage = stage;
+			event.begin();
+			start = System.nanoTime();
+		}
+
+		public Span nodes(long nodes) {
+			this.nodes = nodes;
+			return this;
+		}
+
+		public Span pixels(long pixels) {
+			this.pixels += pixels;
+			return this;
+		}
+
+		public Span bytes(long bytes) {
+			this.bytes += bytes;
+			return this;
+		}
+
+		/**
+		 * @return a surface that draws on the given one and counts the calls made
+		 *         to it as draw calls of this span
+		 */
+		public TreeSurface count(final TreeSurface surface) {
+			return new TreeSurface() {
+				@Override
+				public void setLineWidth(double width) {
+					surface.setLineWidth(width);
+				}
+
+				@Override
+				public void setFont(LabelMetrics metrics) {
+					surface.setFont(metrics);
+				}
+
+				@Override
+				public void strokeRect(double x, double y, double width, double height) {
+					drawCalls++;
+					surface.strokeRect(x, y, width, height);
+				}
+
+				@Override
+				public void strokeLine(double x1, double y1, double x2, double y2) {
+					drawCalls++;
+					surface.strokeLine(x1, y1, x2, y2);
+				}
+
+				@Override
+				public void strokeRects(double[] rects, int count) {
+					drawCalls++;
+					surface.strokeRects(rects, count);
+				}
+
+				@Override
+				public void strokeLines(double[] lines, int count) {
+					drawCalls++;
+					surface.strokeLines(lines, count);
+				}
+
+				@Override
+				public void fillText(String text, double x, double y, double maxWidth) {
+					drawCalls++;
+					surface.fillText(text, x, y, maxWidth);
+				}
+			};
+		}
+
+		/**
+		 * Records the run. Must be called once, typically in a {@code finally} block.
+		 */
+		public void end() {
+			long elapsed = System.nanoTime() - start;
+			int i = stage.ordinal();
+			counts[i].increment();
+			nanos[i].add(elapsed);
+			histograms[i].incrementAndGet(bucket(elapsed));
+			if(nodes >= 0)
+				nodeCount.set(nodes);
+			StageMetrics.drawCalls.add(drawCalls);
+			StageMetrics.pixels.add(pixels);
+			StageMetrics.bytes.add(bytes);
+
+			event.end();
+			if(event.shouldCommit()) {
+				event.stage = stage.name();
+				event.nodes = Math.max(nodes, 0);
+				event.drawCalls = drawCalls;
+				event.pixels = pixels;
+				event.bytes = bytes;
+				event.commit();
+			}
+		}
+	}
+
+	@Name("application.Stage")
+	@Label("Tree Stage")
+	@Category("TreeVisualizer")
+	@Description("A run of one stage of loading, laying out, drawing or exporting a tree")
+	@StackTrace(false)
+	static final class StageEvent extends Event {
+		@Label("Stage")
+		String stage;
+
+		@Label("Nodes")
+		long nodes;
+
+		@Label("Draw Calls")
+		long drawCalls;
+
+		@Label("Pixels")
+		long pixels;
+
+		@Label("Bytes Written")
+		@DataAmount
+		long bytes;
+	}
+
+	private static final class Bean implements StageMetricsMXBean {
+
+		@Override
+		public long getNodeCount() {
+			return nodeCount.get();
+		}
+
+		@Override
+		public long getDrawCalls() {
+			return drawCalls.sum();
+		}
+
+		@Override
+		public long getPixelsExported() {
+			return pixels.sum();
+		}
+
+		@Override
+		public long getBytesWritten() {
+			return bytes.sum();
+		}
+
+		@Override
+		public Map<String, Long> getStageCounts() {
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(Stage stage : STAGES)
+				map.put(stage.name(), counts[stage.ordinal()].sum());
+			return map;
+		}
+
+		@Override
+		public Map<String, Long> getStageNanos() {
+			Map<String, Long> map = new LinkedHashMap<String, Long>();
+			for(Stage stage : STAGES)
+				map.put(stage.name(), nanos[stage.ordinal()].sum());
+			return map;
+		}
+
+		@Override
+		public Map<String, long[]> getStageLatencyHistograms() {
+			Map<String, long[]> map = new LinkedHashMap<String, long[]>();
+			for(Stage stage : STAGES) {
+				AtomicLongArray histogram = histograms[stage.ordinal()];
+				long[] copy = new long[BUCKETS];
+				for(int b = 0; b < BUCKETS; b++)
+					copy[b] = histogram.get(b);
+				map.put(stage.name(), copy);
+			}
+			return map;
+		}
+
+		@Override
+		public void reset() {
+			for(int i = 0; i < STAGES.length; i++) {
+				counts[i].reset();
+				nanos[i].reset();
+				for(int b = 0; b < BUCKETS; b++)
+					histograms[i].set(b, 0);
+			}
+			nodeCount.set(0);
+			drawCalls.reset();
+			pixels.reset();
+			bytes.reset();
+		}
+	}
+}
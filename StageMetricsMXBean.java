@@ -0,0 +1,54 @@
+package application;
+
+import java.util.Map;
+
+/**
+ * The counters kept by {@link StageMetrics}, registered with the platform MBean
+ * server as {@value StageMetrics#OBJECT_NAME}. Maps are keyed by the names of the
+ * {@link StageMetrics.Stage stages}.
+ */
+public interface StageMetricsMXBean {
+
+	/**
+	 * @return the number of nodes handled by the stage that ran last and counted them
+	 */
+	long getNodeCount();
+
+	/**
+	 * @return the number of drawing operations issued to surfaces, counting a batch
+	 *         of boxes or lines stroked as one path once
+	 */
+	long getDrawCalls();
+
+	/**
+	 * @return the number of pixels in exported images
+	 */
+	long getPixelsExported();
+
+	/**
+	 * @return the number of bytes of exported files
+	 */
+	long getBytesWritten();
+
+	/**
+	 * @return how many times each stage ran
+	 */
+	Map<String, Long> getStageCounts();
+
+	/**
+	 * @return the total time spent in each stage, in nanoseconds
+	 */
+	Map<String, Long> getStageNanos();
+
+	/**
+	 * Latencies of each stage. Entry {@code i} of a histogram counts the runs that took
+	 * less than 2<sup>i</sup> microseconds but not less than half that, entry 0 those
+	 * under a microsecond; the last entry also counts anything longer.
+	 */
+	Map<String, long[]> getStageLatencyHistograms();
+
+	/**
+	 * Sets every counter back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,196 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes a layout as an SVG document, straight from the layout arrays and without
+ * rasterizing, so the file stays sharp at any zoom and its size grows with the
+ * number of nodes rather than with the area of the canvas.
+ * <p>
+ * The lines from a parent to its children are written as one path, followed by the
+ * boxes and then the labels, each group sharing its style attributes. Coordinates
+ * are rounded to hundredths of a pixel.
+ */
+public class SvgExporter implements TreeExporter {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	// How many nodes are written between two progress reports.
+	private static final int REPORT_INTERVAL = 4096;
+
+	@Override
+	public void export(LayoutResult layout, File file, Progress progress) throws IOException {
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.EXPORT).nodes(layout.getNodeCount());
+		try {
+			try(Writer out = new BufferedWriter(
+					new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+				write(layout, out, progress);
+			}
+			span.bytes(file.length());
+		} finally {
+			span.end();
+		}
+	}
+
+	/**
+	 * Writes the document to a writer, which is not closed. Every node is visited
+	 * three times, once for each group, and progress counts those visits.
+	 */
+	public void write(LayoutResult layout, Writer out, Progress progress) throws IOException {
+		long total = 3L * layout.size();
+		LabelMetrics metrics = layout.getMetrics();
+		out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+		out.write("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+		number(out, layout.getCanvasWidth());
+		out.write("\" height=\"");
+		number(out, layout.getCanvasHeight());
+		out.write("\" viewBox=\"0 0 ");
+		number(out, layout.getCanvasWidth());
+		out.write(' ');
+		number(out, layout.getCanvasHeight());
+		out.write("\">\n<rect width=\"100%\" height=\"100%\" fill=\"white\"/>\n");
+
+		out.write("<g fill=\"none\" stroke=\"black\" stroke-width=\"2\">\n");
+		for(int p = 0; p < layout.size(); p++) {
+			report(p, 0, total, progress);
+			if(!layout.isNode(p) || layout.getChildCount(p) == 0)
+				continue;
+			out.write("<path d=\"");
+			for(int i = 0; i < layout.getChildCount(p); i++) {
+				int c = layout.getChild(p, i);
+				out.write('M');
+				point(out, layout.edgeStartX(p), layout.edgeStartY(p));
+				out.write('L');
+				point(out, layout.edgeEndX(c), layout.edgeEndY(c));
+			}
+			out.write("\"/>\n");
+		}
+		for(int v = 0; v < layout.size(); v++) {
+			report(v, layout.size(), total, progress);
+			if(!layout.isNode(v))
+				continue;
+			out.write("<rect x=\"");
+			number(out, layout.getX(v));
+			out.write("\" y=\"");
+			number(out, layout.getY(v));
+			out.write("\" width=\"");
+			number(out, layout.getWidth(v));
+			out.write("\" height=\"");
+			number(out, layout.getHeight(v));
+			out.write("\"/>\n");
+		}
+		out.write("</g>\n");
+
+		// Labels are centered like the painters center them, and squeezed the same way.
+		out.write("<g font-family=\"");
+		out.write(fontFamily(metrics.getFamily()));
+		out.write("\" font-size=\"");
+		number(out, metrics.getSize());
+		out.write("\" text-anchor=\"middle\">\n");
+		double baseline = (metrics.getAscent() - metrics.getDescent()) / 2;
+		for(int v = 0; v < layout.size(); v++) {
+			report(v, 2L * layout.size(), total, progress);
+			String label = layout.getLabel(v);
+			if(!layout.isNode(v) || label == null)
+				continue;
+			double room = layout.getWidth(v) - 2 * LabelMetrics.PADDING;
+			out.write("<text x=\"");
+			number(out, layout.getX(v) + layout.getWidth(v) / 2);
+			out.write("\" y=\"");
+			number(out, layout.getY(v) + layout.getHeight(v) / 2 + baseline);
+			if(layout.getLabelWidth(v) > room) {
+				out.write("\" textLength=\"");
+				number(out, room);
+				out.write("\" lengthAdjust=\"spacingAndGlyphs");
+			}
+			out.write("\">");
+			escape(out, label);
+			out.write("</text>\n");
+		}
+		out.write("</g>\n</svg>\n");
+		progress.update(total, total);
+	}
+
+	private static void report(int v, long done, long total, Progress progress) throws IOException {
+		if(v % REPORT_INTERVAL != 0)
+			return;
+		if(Thread.currentThread().isInterrupted())
+			throw new InterruptedIOException("Export cancelled");
+		progress.update(done + v, total);
+	}
+
+	private static void point(Writer out, double x, double y) throws IOException {
+		number(out, x);
+		out.write(' ');
+		number(out, y);
+	}
+
+	/*
+	 * Writes a number with at most two decimals, without going through a String.
+	 */
+	private static void number(Writer out, double value) throws IOException {
+		long hundredths = Math.round(value * 100);
+		if(hundredths < 0) {
+			out.write('-');
+			hundredths = -hundredths;
+		}
+		digits(out, hundredths / 100);
+		int fraction = (int) (hundredths % 100);
+		if(fraction != 0) {
+			out.write('.');
+			out.write('0' + fraction / 10);
+			if(fraction % 10 != 0)
+				out.write('0' + fraction % 10);
+		}
+	}
+
+	private static void digits(Writer out, long value) throws IOException {
+		if(value >= 10)
+			digits(out, value / 10);
+		out.write('0' + (int) (value % 10));
+	}
+
+	private static void escape(Writer out, String text) throws IOException {
+		for(int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			switch(c) {
+			case '&':
+				out.write("&amp;");
+				break;
+			case '<':
+				out.write("&lt;");
+				break;
+			case '>':
+				out.write("&gt;");
+				break;
+			default:
+				out.write(c);
+			}
+		}
+	}
+
+	/*
+	 * Java's logical font families become the matching CSS generic families.
+	 */
+	private static String fontFamily(String family) {
+		if(family.equalsIgnoreCase("SansSerif") || family.equalsIgnoreCase("Dialog"))
+			return "sans-serif";
+		if(family.equalsIgnoreCase("Serif"))
+			return "serif";
+		if(family.equalsIgnoreCase("Monospaced") || family.equalsIgnoreCase("DialogInput"))
+			return "monospace";
+		StringBuilder quoted = new StringBuilder("'");
+		for(int i = 0; i < family.length(); i++) {
+			char c = family.charAt(i);
+			if(c != '\'' && c != '"' && c != '&' && c != '<')
+				quoted.append(c);
+		}
+		return quoted.append('\'').toString();
+	}
+}
@@ -0,0 +1,202 @@
+package application;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Draws a layout in fixed-size tiles on several threads and streams the pixels to a
+ * {@link PngWriter}.
+ * <p>
+ * The image is produced one row of tiles at a time. The tiles of a row are drawn
+ * concurrently, each by a worker into a tile-sized image of its own and only with
+ * what a {@link LayoutIndex} finds in the tile, then copied into a band buffer.
+ * While the next row of tiles is drawn, the previous band is encoded on a separate
+ * thread, so two bands are held in memory. Drawing memory does not grow with the
+ * image; only the bands do, as a PNG is written a whole row at a time.
+ */
+public class TiledRenderer {
+
+	public static final int DEFAULT_TILE_SIZE = 512;
+
+	private final LayoutResult layout;
+	private final int width;
+	private final int height;
+	private final int tileSize;
+	private final int threads;
+
+	/**
+	 * @param width    the width of the image, from the left edge of the canvas
+	 * @param height   the height of the image, from the top edge of the canvas
+	 * @param tileSize the width and height of a tile
+	 * @param threads  the number of tiles drawn at the same time
+	 */
+	public TiledRenderer(LayoutResult layout, int width, int height, int tileSize, int threads) {
+		this.layout = layout;
+		this.width = width;
+		this.height = height;
+		this.tileSize = tileSize;
+		this.threads = threads;
+	}
+
+	/**
+	 * Draws the image and writes all of its rows. The writer is not closed.
+	 *
+	 * @throws InterruptedIOException if the calling thread is interrupted
+	 */
+	public void render(final PngWriter png, TreeExporter.Progress progress) throws IOException {
+		final LayoutIndex index = new LayoutIndex(layout);
+		int columns = (width + tileSize - 1) / tileSize;
+		ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, columns)),
+				daemonThreads("tree-tile"));
+		ExecutorService encoder = Executors.newSingleThreadExecutor(daemonThreads("tree-encode"));
+		final List<Tile> tiles = new ArrayList<Tile>();
+		// One tile per worker thread, made the first time the thread draws.
+		final ThreadLocal<Tile> tile = new ThreadLocal<Tile>() {
+			@Override
+			protected Tile initialValue() {
+				Tile t = new Tile(index.forThread());
+				synchronized(tiles) {
+					tiles.add(t);
+				}
+				return t;
+			}
+		};
+
+		int[][] bands = { new int[width * tileSize], new int[width * tileSize] };
+		boolean complete = false;
+		try {
+			Future<?> encoding = null;
+			for(int band = 0, y = 0; y < height; band++, y += tileSize) {
+				if(Thread.currentThread().isInterrupted())
+					throw new InterruptedIOException("Export cancelled");
+				final int rows = Math.min(tileSize, height - y);
+				final int[] pixels = bands[band % 2];
+
+				List<Future<?>> drawn = new ArrayList<Future<?>>(columns);
+				for(int x = 0; x < width; x += tileSize) {
+					final int tileX = x;
+					final int tileY = y;
+					drawn.add(workers.submit(new Callable<Void>() {
+						@Override
+						public Void call() {
+							tile.get().draw(tileX, tileY, Math.min(tileSize, width - tileX), rows, pixels);
+							return null;
+						}
+					}));
+				}
+				for(Future<?> f : drawn)
+					get(f);
+
+				// The previous band is still being encoded from the other buffer meanwhile.
+				if(encoding != null)
+					get(encoding);
+				progress.update(y, height);
+				encoding = encoder.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws IOException {
+						png.writeRows(pixels, 0, width, rows);
+						return null;
+					}
+				});
+			}
+			get(encoding);
+			progress.update(height, height);
+			complete = true;
+		} finally {
+			workers.shutdownNow();
+			encoder.shutdownNow();
+			if(!complete) {
+				// The writer and the tiles must not be used once this returns.
+				try {
+					encoder.awaitTermination(1, TimeUnit.MINUTES);
+					workers.awaitTermination(1, TimeUnit.MINUTES);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			for(Tile t : tiles)
+				t.dispose();
+		}
+	}
+
+	/*
+	 * The image, painter and index one worker draws tiles with.
+	 */
+	private class Tile {
+		final BufferedImage image = new BufferedImage(tileSize, tileSize, BufferedImage.TYPE_INT_ARGB);
+		final int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		final Graphics2D g = image.createGraphics();
+		final Graphics2DSurface surface = new Graphics2DSurface(g);
+		final LayoutPainter painter = new LayoutPainter();
+		final LayoutIndex index;
+
+		Tile(LayoutIndex index) {
+			this.index = index;
+		}
+
+		void draw(int x, int y, int w, int h, int[] band) {
+			StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.DRAW);
+			try {
+				// The tile's pixels, in canvas coordinates.
+				g.setTransform(AffineTransform.getTranslateInstance(-x, -y));
+				surface.setClip(x, y, w, h);
+				g.setColor(Color.WHITE);
+				g.fillRect(x, y, w, h);
+				g.setColor(Color.BLACK);
+				// Padded, so strokes that reach across the edge between two tiles are drawn in both.
+				painter.paint(span.count(surface), layout, index, x - 2, y - 2, w + 4, h + 4);
+			} finally {
+				span.end();
+			}
+			for(int row = 0; row < h; row++)
+				System.arraycopy(pixels, row * tileSize, band, row * width + x, w);
+		}
+
+		void dispose() {
+			g.dispose();
+		}
+	}
+
+	private static void get(Future<?> future) throws IOException {
+		try {
+			future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Export cancelled");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof IOException)
+				throw (IOException) cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if(cause instanceof Error)
+				throw (Error) cause;
+			throw new IOException(cause);
+		}
+	}
+
+	private static ThreadFactory daemonThreads(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+}
@@ -1,222 +1,959 @@
-package application;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-
-//TODO JAVADOCS
-public class Tree<T> {
-
-	private T data;
-	private Tree<T> parent = null;
-	private List<Tree<T>> children = new ArrayList<Tree<T>>();
-    private HashMap<T, Tree<T>> locate = new HashMap<T, Tree<T>>();
-        
-    public Tree(T data) {
-        setData(data);
-    }
-        
-    /*
-     * Add a node under a specified root node.
-     * If root node does not exist, it will be created.
-     */
-    public void addNode(T root, T data) {
-        if(locate.containsKey(root))
-        	locate.get(root).addNode(data);
-        else
-        	addNode(root).addNode(data);
-    }
-        
-    public Tree<T> addNode(T data) {
-        Tree<T> node = new Tree<T>(data);
-        children.add(node);
-        node.parent = this;
-        node.locate = this.locate;
-        locate.put(data, node);
-        return node;
-    }
-    
-    public Tree<T> setAsParent(T parentRoot) {
-    	Tree<T> t = new Tree<T>(parentRoot);
-    	t.children.add(this);
-    	this.parent = t;
-    	t.locate = this.locate;
-    	t.locate.put(data, this);
-    	t.locate.put(parentRoot, t);
-    	return t;
-    }
-    
-    public void setData(T data) {
-    	this.data = data;
-    	locate.put(data, this);
-    }
-        
-    public T getData() {
-        return data;
-    }
-        
-    public Tree<T> getParent() {
-      	return parent;
-    }
-        
-    public Tree<T> getTree(T element) {
-        return locate.get(element);
-    }
-        
-    /**
-     * Returns a list of the data from each child node of the
-     * root node.
-     * 
-     * @param  root the value of the head of the subtree to retrieve 
-     * @return 		a list of the values of the immediate children of the root node
-     */
-    public List<T> getSuccessors(T root) {
-        List<T> successors = new ArrayList<T>();
-        Tree<T> tree = locate.get(root);
-        if(tree != null) {
-        	for(Tree<T> node : tree.children) {
-        		successors.add(node.getData());
-        	}
-        }
-        return successors;
-    }
-    
-    /**
-     * Returns a list of the values of the root leaf and every leaf below the level of the
-     * node containing the root value.
-     * 
-     * @param  root the value of the highest node of reference
-     * @return 		a list containing the values of the subleaves
-     */
-    public List<T> getSubLeafs(T root) {
-    	List<T> subleafs = new ArrayList<T>();
-    	Tree<T> tree = locate.get(root);
-    	
-    	if(tree != null) {
-    		if(!tree.hasChildren()) {
-    			subleafs.add(tree.getData());
-    			return subleafs;
-    		}
-    		else
-    			subleafs.add(tree.getData());
-    		
-    		for(Tree<T> node : tree.children)
-    			subleafs.addAll(getSubLeafs(node.getData()));
-    	}
-    	
-    	return subleafs;
-    }
-        
-    public List<Tree<T>> getChildNodes() {
-     	return children;
-    }
-    
-    /**
-     * Removes a particular element from the entire tree
-     * 
-     * @param element the element to be removed
-     */
-    public void remove(T element) {
-    	Tree<T> removeElement = getTree(element);
-    	
-    	recurseRemove(this, removeElement);
-    	children.remove(removeElement);
-    	locate.remove(element);
-    	
-    	//Remove all instances of child nodes from the lookup array.
-    	for(Tree<T> tree : removeElement.getChildNodes()) {
-			locate.remove(tree.getData());
-    	}
-    }
-    
-    private void recurseRemove(Tree<T> t, Tree<T> element) {
-    	if(t.children.isEmpty() == false) { // Checks to see if the current node has any children.
-    		t.children.remove(element);
-    		for(Tree<T> subTree : t.children)	// Traverses through each child node and removes all instances of the element.
-    			recurseRemove(subTree, element);
-    	}
-    }
-    
-    public void clear() {
-    	clear(this, children);
-        children.clear();
-    }
-    
-    private void clear(Collection<Tree<T>> clearList) {
-    	for(Tree<T> t : clearList)
-    		locate.remove(t.getData());
-    }
-    
-    private void clear(Tree<T> t, Collection<Tree<T>> clearList) {
-    	if(t.getParent() != null) {
-    		t.getParent().clear(clearList);
-    		clear(t.getParent(), clearList);
-    	}
-    }
-    
-    /*
-     * Returns the highest number of nodes in a level of the tree
-     */
-    public int maxWidth() {
-    	List<Tree<T>> CurrNodes = new ArrayList<Tree<T>>();
-    	CurrNodes.add(this);
-    	int maxWidth = 1;
-    	List<Tree<T>> NextNodes = new ArrayList<Tree<T>>();
-    	while(!CurrNodes.isEmpty()) {
-    		for(Tree<T> t : CurrNodes)
-    			NextNodes.addAll(t.getChildNodes());
-    		if(NextNodes.isEmpty())
-    			break;
-    		if(NextNodes.size() > maxWidth)
-    			maxWidth = NextNodes.size();
-    		CurrNodes.clear();
-    		CurrNodes.addAll(NextNodes);
-    		NextNodes.clear();
-    	}
-    	
-    	return maxWidth;
-    }
-    
-    
-    /*
-     * Returns the max height of a tree node
-     * Recursive implementation 
-     */
-    public int getHeight(Tree<T> t, int num, int max) {
-    	List<Tree<T>> childNodes = t.children;
-    	if(t.getChildNodes().isEmpty())
-    		return num + 1;
-    	if(num > max)
-    		max = num;
-    	
-    	for(int i = 0; i < childNodes.size(); i++)
-    		max = Math.max(max, getHeight(childNodes.get(i), num + 1, max));
-    	
-    	return max;
-    }
-    
-    public boolean hasChildren() {
-    	return !children.isEmpty();
-    }
-        
-    @Override
-    public String toString() {
-        return printTree(0);
-    }
-
-    private static final int indent = 2;
-
-    private String printTree(int increment) {
-        String s = "";
-        String inc = "";
-        for (int i = 0; i < increment; ++i) {
-        	inc = inc + " ";
-        }
-        s = inc + data;
-        for (Tree<T> child : children) {
-            s += "\n" + child.printTree(increment + indent);
-        }
-        return s;
-    }
-}
+package application;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.CharBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A tree of labelled nodes.
+ * <p>
+ * Every node has an int handle, {@link #getId()}, that stays the same for as long as
+ * the node is in the tree, and {@link #getNode(int)} finds a node by its handle.
+ * Handles are the cheap way to address nodes. They are never reused, so a handle
+ * kept across a removal finds nothing rather than another node; the table behind
+ * them drops each block of handles once all of them are removed, so it does not grow
+ * with the number of nodes that came and went. Methods taking a label go through a
+ * label dictionary that is built the first time one of them is called and kept up
+ * to date from then on. A label may be held by any number of nodes, see
+ * {@link #getNodes(Object)}, and nodes with equal labels share one label instance
+ * once the dictionary exists.
+ */
+public class Tree<T> implements Iterable<Tree<T>> {
+
+	private T data;
+	private Tree<T> parent = null;
+	private List<Tree<T>> children;
+    private LevelCounts<T> levels;
+    private int level;
+    private int id;
+    // Position of the handle in the dictionary entry of the label.
+    private int slot;
+        
+    public Tree(T data) {
+        children = new ArrayList<Tree<T>>();
+        levels = new LevelCounts<T>(this);
+        levels.increment(0);
+        this.data = data;
+        levels.register(this);
+    }
+    
+    /*
+     * Creates a node that shares the handles and level counts of the given
+     * tree, one level away from the given reference node.
+     */
+    private Tree(T data, Tree<T> reference, int level) {
+        this.children = new ArrayList<Tree<T>>();
+        this.levels = reference.levels;
+        this.level = level;
+        this.data = data;
+        levels.register(this);
+    }
+    
+    /*
+     * Creates a node of a tree being built in bulk, with room for its children. The
+     * caller assigns the handle and counts the node.
+     */
+    private Tree(T data, LevelCounts<T> levels, int level, int childCount) {
+        this.children = childCount == 0 ? new ArrayList<Tree<T>>() : new ArrayList<Tree<T>>(childCount);
+        this.levels = levels;
+        this.level = level;
+        this.data = data;
+    }
+    
+    /*
+     * Builds a whole tree in one pass, see TreeBuilder. Node i has parent parents[i],
+     * or -1 for the root, and gets handle i. Children keep the order of their numbers.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> Tree<T> build(int[] parents, Object[] labels, int size) {
+    	if(size == 0)
+    		throw new IllegalArgumentException("A tree needs a root");
+    	int root = -1;
+    	boolean ordered = true;
+    	int[] first = new int[size + 1];
+    	for(int i = 0; i < size; i++) {
+    		int p = parents[i];
+    		if(p < 0) {
+    			if(root >= 0)
+    				throw new IllegalArgumentException("Nodes " + root + " and " + i + " both have no parent");
+    			root = i;
+    		}
+    		else if(p >= size)
+    			throw new IllegalArgumentException("Parent " + p + " of node " + i + " is not a node");
+    		else
+    			first[p + 1]++;
+    		ordered &= p < i;
+    	}
+    	if(root < 0)
+    		throw new IllegalArgumentException("Every node has a parent, so there is no root");
+    	
+    	Tree<T> tree = new Tree<T>((T) labels[root], null, 0, first[root + 1]);
+    	LevelCounts<T> levels = new LevelCounts<T>(tree);
+    	tree.levels = levels;
+    	levels.reserve(size);
+    	tree.id = root;
+    	levels.put(root, tree);
+    	levels.increment(0);
+    	
+    	if(ordered) {
+    		// Every parent precedes its children, so the nodes can be made in input order.
+    		for(int c = 1; c < size; c++) {
+    			Tree<T> t = levels.node(parents[c]);
+    			Tree<T> child = new Tree<T>((T) labels[c], levels, t.level + 1, first[c + 1]);
+    			child.id = c;
+    			child.parent = t;
+    			levels.put(c, child);
+    			t.children.add(child);
+    			levels.increment(child.level);
+    		}
+    		return tree;
+    	}
+    	
+    	// Children of node v are kids[first[v]] up to kids[first[v + 1]], in ascending order.
+    	for(int v = 0; v < size; v++)
+    		first[v + 1] += first[v];
+    	int[] kids = new int[size];
+    	int[] next = Arrays.copyOf(first, size);
+    	for(int i = 0; i < size; i++) {
+    		if(parents[i] >= 0)
+    			kids[next[parents[i]]++] = i;
+    	}
+    	
+    	// Breadth first, reusing next[] as the queue of node numbers.
+    	next[0] = root;
+    	int queued = 1;
+    	for(int head = 0; head < queued; head++) {
+    		int v = next[head];
+    		Tree<T> t = levels.node(v);
+    		int depth = t.level + 1;
+    		for(int k = first[v]; k < first[v + 1]; k++) {
+    			int c = kids[k];
+    			Tree<T> child = new Tree<T>((T) labels[c], levels, depth, first[c + 1] - first[c]);
+    			child.id = c;
+    			child.parent = t;
+    			levels.put(c, child);
+    			t.children.add(child);
+    			levels.increment(depth);
+    			next[queued++] = c;
+    		}
+    	}
+    	if(queued < size)
+    		throw new IllegalArgumentException((size - queued) + " nodes are not connected to the root");
+    	return tree;
+    }
+        
+    /*
+     * Add a node under a specified root node.
+     * If root node does not exist, it will be created.
+     */
+    public void addNode(T root, T data) {
+        Tree<T> node = getTree(root);
+        if(node != null)
+        	node.addNode(data);
+        else
+        	addNode(root).addNode(data);
+    }
+        
+    public Tree<T> addNode(T data) {
+        Tree<T> node = new Tree<T>(data, this, level + 1);
+        children.add(node);
+        node.parent = this;
+        levels.increment(node.getDepth());
+        levels.fireAdded(node);
+        return node;
+    }
+    
+    /**
+     * Creates a new node holding {@code parentRoot} and places this node under it.
+     * Intended to be called on the root of a tree, which makes the new node the root.
+     * 
+     * @return the new parent node
+     */
+    public Tree<T> setAsParent(T parentRoot) {
+    	Tree<T> t = new Tree<T>(parentRoot, this, level - 1);
+    	t.children.add(this);
+    	this.parent = t;
+    	if(levels.root == this)
+    		levels.addRootLevel(t);
+    	else
+    		levels.increment(t.getDepth());
+    	levels.fireAdded(t);
+    	return t;
+    }
+    
+    public void setData(T data) {
+    	if(levels.labels != null)
+    		levels.unlabel(this);
+    	this.data = data;
+    	if(levels.labels != null)
+    		levels.label(this);
+    	levels.fireChanged(this);
+    }
+    
+    /**
+     * Registers a listener for changes anywhere in the tree this node belongs to.
+     */
+    public void addTreeListener(TreeListener<T> listener) {
+    	if(levels.listeners == null)
+    		levels.listeners = new ArrayList<TreeListener<T>>();
+    	levels.listeners.add(listener);
+    }
+    
+    public void removeTreeListener(TreeListener<T> listener) {
+    	if(levels.listeners != null)
+    		levels.listeners.remove(listener);
+    }
+        
+    public T getData() {
+        return data;
+    }
+        
+    public Tree<T> getParent() {
+      	return parent;
+    }
+        
+    /**
+     * @return the handle of this node, unique within its tree
+     */
+    public int getId() {
+    	return id;
+    }
+    
+    /**
+     * Finds a node of the tree this node belongs to by its handle, without hashing.
+     * 
+     * @return the node, or {@code null} if it has been removed from the tree
+     * @throws IndexOutOfBoundsException if the tree never had a node with the handle
+     */
+    public Tree<T> getNode(int id) {
+    	if(id < 0 || id >= levels.nextId)
+    		throw new IndexOutOfBoundsException("No node with handle " + id);
+    	return levels.node(id);
+    }
+    
+    /**
+     * Returns a node holding a value. When several nodes hold it, which one is
+     * returned is unspecified; {@link #getNodes(Object)} returns all of them.
+     * 
+     * @return the node, or {@code null} if no node holds the value
+     */
+    public Tree<T> getTree(T element) {
+    	Label<T> label = levels.labels().get(element);
+    	return label == null ? null : getNode(label.ids[label.size - 1]);
+    }
+    
+    /**
+     * Returns every node holding a value, in no particular order.
+     */
+    public List<Tree<T>> getNodes(T element) {
+    	Label<T> label = levels.labels().get(element);
+    	if(label == null)
+    		return new ArrayList<Tree<T>>();
+    	List<Tree<T>> nodes = new ArrayList<Tree<T>>(label.size);
+    	for(int i = 0; i < label.size; i++)
+    		nodes.add(getNode(label.ids[i]));
+    	return nodes;
+    }
+        
+    /**
+     * Returns a list of the data from each child node of the
+     * root node.
+     * 
+     * @param  root the value of the head of the subtree to retrieve 
+     * @return 		a list of the values of the immediate children of the root node
+     */
+    public List<T> getSuccessors(T root) {
+        List<T> successors = new ArrayList<T>();
+        Tree<T> tree = getTree(root);
+        if(tree != null) {
+        	for(Tree<T> node : tree.children) {
+        		successors.add(node.getData());
+        	}
+        }
+        return successors;
+    }
+    
+    /**
+     * Returns a list of the values of the root leaf and every leaf below the level of the
+     * node containing the root value.
+     * 
+     * @param  root the value of the highest node of reference
+     * @return 		a list containing the values of the subleaves
+     */
+    public List<T> getSubLeafs(T root) {
+    	List<T> subleafs = new ArrayList<T>();
+    	Tree<T> tree = getTree(root);
+    	
+    	if(tree != null) {
+    		Iterator<Tree<T>> it = tree.preOrderIterator();
+    		while(it.hasNext())
+    			subleafs.add(it.next().getData());
+    	}
+    	
+    	return subleafs;
+    }
+        
+    public List<Tree<T>> getChildNodes() {
+     	return children;
+    }
+    
+    /**
+     * Removes a particular element, and every node below it, from the tree.
+     * The node is reached through its parent link, so the cost is proportional to the
+     * size of the removed subtree rather than the whole tree. Removing the root of the
+     * tree only removes its descendants.
+     * 
+     * @param element the element to be removed
+     */
+    public void remove(T element) {
+    	Tree<T> removeElement = getTree(element);
+    	if(removeElement != null)
+    		removeElement.remove();
+    }
+    
+    /**
+     * Removes this node, and every node below it, from its tree. Removing the root of
+     * the tree only removes its descendants.
+     */
+    public void remove() {
+    	Tree<T> parent = this.parent;
+    	if(parent == null) {
+    		clear();
+    		return;
+    	}
+    	
+    	parent.children.remove(this);
+    	this.parent = null;
+    	parent.unindex(this);
+    	parent.levels.fireRemoved(parent, this);
+    }
+    
+    /**
+     * Removes each of the given elements, and every node below them, from the tree.
+     * Elements that are not in the tree, or that were already removed along with one
+     * of their ancestors, are ignored. Each affected child list is compacted once, so
+     * pruning many siblings of the same parent stays linear.
+     * 
+     * @param elements the elements to be removed
+     */
+    public void removeAll(Collection<T> elements) {
+    	Set<Tree<T>> parents = new HashSet<Tree<T>>();
+    	List<Tree<T>> removed = new ArrayList<Tree<T>>();
+    	List<Tree<T>> removedFrom = new ArrayList<Tree<T>>();
+    	for(T element : elements) {
+    		Tree<T> removeElement = getTree(element);
+    		if(removeElement == null)
+    			continue;
+    		
+    		Tree<T> parent = removeElement.parent;
+    		if(parent == null) {
+    			removeElement.clear();
+    			continue;
+    		}
+    		
+    		// A detached node is recognised by its parent link; the child list is fixed up below.
+    		removeElement.parent = null;
+    		parents.add(parent);
+    		unindex(removeElement);
+    		removed.add(removeElement);
+    		removedFrom.add(parent);
+    	}
+    	
+    	for(Tree<T> parent : parents) {
+    		Iterator<Tree<T>> it = parent.children.iterator();
+    		while(it.hasNext()) {
+    			if(it.next().parent != parent)
+    				it.remove();
+    		}
+    	}
+    	
+    	// Listeners are told once every child list is consistent again.
+    	for(int i = 0; i < removed.size(); i++)
+    		removedFrom.get(i).levels.fireRemoved(removedFrom.get(i), removed.get(i));
+    }
+    
+    /*
+     * Removes a subtree's nodes from the handles, label dictionary and level counts.
+     * The removed subtree gets handles and level counts of its own, so it stays a
+     * valid tree; its nodes are numbered anew.
+     */
+    private void unindex(Tree<T> subtree) {
+    	LevelCounts<T> subtreeLevels = new LevelCounts<T>(subtree);
+    	ArrayDeque<Tree<T>> pending = new ArrayDeque<Tree<T>>();
+    	pending.push(subtree);
+    	while(!pending.isEmpty()) {
+    		Tree<T> t = pending.pop();
+    		levels.unregister(t);
+    		levels.decrement(t.getDepth());
+    		
+    		t.levels = subtreeLevels;
+    		subtreeLevels.increment(t.getDepth());
+    		subtreeLevels.register(t);
+    		
+    		for(Tree<T> child : t.children) {
+    			if(child.parent == t)
+    				pending.push(child);
+    		}
+    	}
+    }
+    
+    /**
+     * Removes every node below this one, leaving this node in place.
+     */
+    public void clear() {
+    	List<Tree<T>> removed = new ArrayList<Tree<T>>(children.size());
+    	for(Tree<T> child : children) {
+    		// Children detached earlier in a removeAll are still listed until it finishes.
+    		if(child.parent == this) {
+    			child.parent = null;
+    			unindex(child);
+    			removed.add(child);
+    		}
+    	}
+        children.clear();
+        for(Tree<T> child : removed)
+        	levels.fireRemoved(this, child);
+    }
+    
+    /*
+     * Returns the highest number of nodes in a level of the tree.
+     * Constant time on the root of a tree; other nodes scan their subtree.
+     */
+    public int maxWidth() {
+    	if(levels.root == this)
+    		return Math.max(1, levels.maxWidth);
+    	
+    	StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.METRICS);
+    	List<Tree<T>> CurrNodes = new ArrayList<Tree<T>>();
+    	CurrNodes.add(this);
+    	int maxWidth = 1;
+    	int nodes = 1;
+    	List<Tree<T>> NextNodes = new ArrayList<Tree<T>>();
+    	while(!CurrNodes.isEmpty()) {
+    		for(Tree<T> t : CurrNodes)
+    			NextNodes.addAll(t.getChildNodes());
+    		if(NextNodes.isEmpty())
+    			break;
+    		nodes += NextNodes.size();
+    		if(NextNodes.size() > maxWidth)
+    			maxWidth = NextNodes.size();
+    		CurrNodes.clear();
+    		CurrNodes.addAll(NextNodes);
+    		NextNodes.clear();
+    	}
+    	span.nodes(nodes).end();
+    	
+    	return maxWidth;
+    }
+    
+    
+    /**
+     * Returns the number of levels in the tree this node belongs to.
+     * The count is kept up to date as nodes are added and removed, so this is O(1).
+     */
+    public int getHeight() {
+    	return levels.height;
+    }
+    
+    /**
+     * Returns the number of nodes on a level of the tree this node belongs to, in O(1).
+     * 
+     * @param depth the level, the root being at depth 0
+     */
+    public int getLevelWidth(int depth) {
+    	return depth < levels.height ? levels.widths[depth] : 0;
+    }
+    
+    /**
+     * Returns the depth of this node, the root of its tree being at depth 0.
+     */
+    public int getDepth() {
+    	return level - levels.rootLevel;
+    }
+    
+    /**
+     * Recounts the levels of the whole tree and checks them against the maintained
+     * height and level widths.
+     * 
+     * @throws IllegalStateException if the maintained counts are out of date
+     */
+    public void verifyMetrics() {
+    	Tree<T> root = levels.root;
+    	if(root.parent != null)
+    		throw new IllegalStateException("Root " + root.data + " has a parent");
+    	
+    	int depth = 0;
+    	int maxWidth = 0;
+    	ArrayDeque<Tree<T>> level = new ArrayDeque<Tree<T>>();
+    	level.add(root);
+    	while(!level.isEmpty()) {
+    		int width = level.size();
+    		if(getLevelWidth(depth) != width)
+    			throw new IllegalStateException("Level " + depth + " has " + width + " nodes, counted "
+    					+ getLevelWidth(depth));
+    		maxWidth = Math.max(maxWidth, width);
+    		for(int n = width; n > 0; n--) {
+    			Tree<T> t = level.poll();
+    			if(t.levels != levels || t.getDepth() != depth)
+    				throw new IllegalStateException("Node " + t.data + " is not tracked at depth " + depth);
+    			level.addAll(t.children);
+    		}
+    		depth++;
+    	}
+    	if(levels.height != depth)
+    		throw new IllegalStateException("Tree has " + depth + " levels, counted " + levels.height);
+    	if(levels.maxWidth != maxWidth)
+    		throw new IllegalStateException("Widest level has " + maxWidth + " nodes, counted " + levels.maxWidth);
+    }
+    
+    /*
+     * Returns the number of levels below and including t, plus num,
+     * or max if that is larger.
+     * Iterative implementation, so degenerate chains cannot overflow the stack.
+     */
+    public int getHeight(Tree<T> t, int num, int max) {
+    	StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.METRICS);
+    	int levels = 0;
+    	long nodes = 0;
+    	ArrayDeque<Tree<T>> level = new ArrayDeque<Tree<T>>();
+    	level.add(t);
+    	while(!level.isEmpty()) {
+    		levels++;
+    		nodes += level.size();
+    		for(int n = level.size(); n > 0; n--)
+    			level.addAll(level.poll().children);
+    	}
+    	span.nodes(nodes).end();
+    	return Math.max(max, num + levels);
+    }
+    
+    /**
+     * Returns an iterator over this node and its descendants in pre-order:
+     * each node comes before its children, children in insertion order.
+     */
+    public Iterator<Tree<T>> preOrderIterator() {
+    	return new PreOrderIterator<T>(this);
+    }
+    
+    /**
+     * Returns an iterator over this node and its descendants in post-order:
+     * each node comes after all of its children.
+     */
+    public Iterator<Tree<T>> postOrderIterator() {
+    	return new PostOrderIterator<T>(this);
+    }
+    
+    /**
+     * Returns an iterator over this node and its descendants level by level.
+     */
+    public Iterator<Tree<T>> breadthFirstIterator() {
+    	return new BreadthFirstIterator<T>(this);
+    }
+    
+    /**
+     * Same as {@link #preOrderIterator()}.
+     */
+    @Override
+    public Iterator<Tree<T>> iterator() {
+    	return preOrderIterator();
+    }
+    
+    /**
+     * Returns a pre-order spliterator that splits on subtrees, so parallel
+     * streams divide the work between branches of the tree.
+     */
+    @Override
+    public Spliterator<Tree<T>> spliterator() {
+    	return new TreeSpliterator<T>(this);
+    }
+    
+    /**
+     * Returns a sequential stream of this node and its descendants in pre-order.
+     */
+    public Stream<Tree<T>> stream() {
+    	return StreamSupport.stream(spliterator(), false);
+    }
+    
+    /**
+     * Returns a parallel stream of this node and its descendants.
+     */
+    public Stream<Tree<T>> parallelStream() {
+    	return StreamSupport.stream(spliterator(), true);
+    }
+    
+    public boolean hasChildren() {
+    	return !children.isEmpty();
+    }
+        
+    /*
+     * Node counts per level, handles, the label dictionary and change listeners,
+     * shared by every node of a tree.
+     * Nodes store an absolute level and the root's level is subtracted to get a depth,
+     * so a new root can be put on top without touching the existing nodes.
+     * widthFrequency[w] is the number of levels holding exactly w nodes, which keeps
+     * the widest level known without rescanning when a level shrinks.
+     * Handles are given out in order and never again. The node with a handle is kept
+     * in pages of PAGE_SIZE handles, pages[id >> PAGE_BITS], with pageCounts holding
+     * the number of nodes in each; a page is dropped once all its handles were given
+     * out and all its nodes removed.
+     */
+    private static final class LevelCounts<T> {
+    	Tree<T> root;
+    	int rootLevel;
+    	int[] widths = new int[16];
+    	int height;
+    	int[] widthFrequency = new int[16];
+    	int maxWidth;
+    	static final int PAGE_BITS = 10;
+    	static final int PAGE_SIZE = 1 << PAGE_BITS;
+    	Object[][] pages = new Object[1][];
+    	int[] pageCounts = new int[1];
+    	int nextId;
+    	HashMap<T, Label<T>> labels;
+    	List<TreeListener<T>> listeners;
+    	
+    	LevelCounts(Tree<T> root) {
+    		this.root = root;
+    		this.rootLevel = root.level;
+    	}
+    	
+    	@SuppressWarnings("unchecked")
+    	Tree<T> node(int id) {
+    		Object[] page = pages[id >>> PAGE_BITS];
+    		return page == null ? null : (Tree<T>) page[id & (PAGE_SIZE - 1)];
+    	}
+    	
+    	void put(int id, Tree<T> node) {
+    		int p = id >>> PAGE_BITS;
+    		if(p >= pages.length) {
+    			int capacity = Math.max(p + 1, pages.length + (pages.length >> 1));
+    			pages = Arrays.copyOf(pages, capacity);
+    			pageCounts = Arrays.copyOf(pageCounts, capacity);
+    		}
+    		if(pages[p] == null)
+    			pages[p] = new Object[PAGE_SIZE];
+    		pages[p][id & (PAGE_SIZE - 1)] = node;
+    		pageCounts[p]++;
+    	}
+    	
+    	/*
+    	 * Gives out the handles below size at once, for a tree built in bulk.
+    	 */
+    	void reserve(int size) {
+    		int count = (size + PAGE_SIZE - 1) >>> PAGE_BITS;
+    		if(count > pages.length) {
+    			pages = Arrays.copyOf(pages, count);
+    			pageCounts = Arrays.copyOf(pageCounts, count);
+    		}
+    		nextId = size;
+    	}
+    	
+    	void register(Tree<T> node) {
+    		if(nextId == Integer.MAX_VALUE)
+    			throw new IllegalStateException("All " + Integer.MAX_VALUE + " handles of the tree have been used");
+    		node.id = nextId++;
+    		put(node.id, node);
+    		if(labels != null)
+    			label(node);
+    	}
+    	
+    	void unregister(Tree<T> node) {
+    		if(labels != null)
+    			unlabel(node);
+    		int p = node.id >>> PAGE_BITS;
+    		pages[p][node.id & (PAGE_SIZE - 1)] = null;
+    		// No handle of a page that was given out in full comes back, so an empty one can go.
+    		if(--pageCounts[p] == 0 && ((long) p + 1 << PAGE_BITS) <= nextId)
+    			pages[p] = null;
+    	}
+    	
+    	/*
+    	 * Builds the label dictionary on first use.
+    	 */
+    	@SuppressWarnings("unchecked")
+    	HashMap<T, Label<T>> labels() {
+    		if(labels == null) {
+    			labels = new HashMap<T, Label<T>>();
+    			for(Object[] page : pages) {
+    				if(page == null)
+    					continue;
+    				for(Object node : page) {
+    					if(node != null)
+    						label((Tree<T>) node);
+    				}
+    			}
+    		}
+    		return labels;
+    	}
+    	
+    	void label(Tree<T> node) {
+    		Label<T> label = labels.get(node.data);
+    		if(label == null) {
+    			label = new Label<T>(node.data);
+    			labels.put(node.data, label);
+    		}
+    		else
+    			node.data = label.value;
+    		if(label.size == label.ids.length)
+    			label.ids = Arrays.copyOf(label.ids, label.size * 2);
+    		node.slot = label.size;
+    		label.ids[label.size++] = node.id;
+    	}
+    	
+    	/*
+    	 * The last handle of the entry takes the place of the removed one.
+    	 */
+    	void unlabel(Tree<T> node) {
+    		Label<T> label = labels.get(node.data);
+    		int last = label.ids[--label.size];
+    		if(last != node.id) {
+    			label.ids[node.slot] = last;
+    			node(last).slot = node.slot;
+    		}
+    		if(label.size == 0)
+    			labels.remove(node.data);
+    	}
+    	
+    	void increment(int depth) {
+    		if(depth == widths.length)
+    			widths = Arrays.copyOf(widths, depth * 2);
+    		int width = ++widths[depth];
+    		move(width - 1, width);
+    		if(width > maxWidth)
+    			maxWidth = width;
+    		if(depth >= height)
+    			height = depth + 1;
+    	}
+    	
+    	void decrement(int depth) {
+    		int width = --widths[depth];
+    		move(width + 1, width);
+    		if(maxWidth == width + 1 && widthFrequency[maxWidth] == 0)
+    			maxWidth = width;
+    		while(height > 0 && widths[height - 1] == 0)
+    			height--;
+    	}
+    	
+    	private void move(int fromWidth, int toWidth) {
+    		int needed = Math.max(fromWidth, toWidth);
+    		if(needed >= widthFrequency.length)
+    			widthFrequency = Arrays.copyOf(widthFrequency, Math.max(needed + 1, widthFrequency.length * 2));
+    		if(fromWidth > 0)
+    			widthFrequency[fromWidth]--;
+    		if(toWidth > 0)
+    			widthFrequency[toWidth]++;
+    	}
+    	
+    	void addRootLevel(Tree<T> newRoot) {
+    		if(height == widths.length)
+    			widths = Arrays.copyOf(widths, height * 2);
+    		System.arraycopy(widths, 0, widths, 1, height);
+    		widths[0] = 0;
+    		height++;
+    		root = newRoot;
+    		rootLevel = newRoot.level;
+    		increment(0);
+    	}
+    	
+    	void fireAdded(Tree<T> node) {
+    		if(listeners != null) {
+    			for(TreeListener<T> listener : listeners)
+    				listener.nodeAdded(node);
+    		}
+    	}
+    	
+    	void fireRemoved(Tree<T> parent, Tree<T> node) {
+    		if(listeners != null) {
+    			for(TreeListener<T> listener : listeners)
+    				listener.nodeRemoved(parent, node);
+    		}
+    	}
+    	
+    	void fireChanged(Tree<T> node) {
+    		if(listeners != null) {
+    			for(TreeListener<T> listener : listeners)
+    				listener.nodeChanged(node);
+    		}
+    	}
+    }
+    
+    /*
+     * A dictionary entry: the shared instance of a label and the handles of the nodes
+     * holding it.
+     */
+    private static final class Label<T> {
+    	final T value;
+    	int[] ids = new int[1];
+    	int size;
+    	
+    	Label(T value) {
+    		this.value = value;
+    	}
+    }
+    
+    private static class PreOrderIterator<T> implements Iterator<Tree<T>> {
+    	private final ArrayDeque<Tree<T>> stack = new ArrayDeque<Tree<T>>();
+    	
+    	PreOrderIterator(Tree<T> root) {
+    		stack.push(root);
+    	}
+    	
+    	@Override
+    	public boolean hasNext() {
+    		return !stack.isEmpty();
+    	}
+    	
+    	@Override
+    	public Tree<T> next() {
+    		if(stack.isEmpty())
+    			throw new NoSuchElementException();
+    		Tree<T> t = stack.pop();
+    		for(int i = t.children.size() - 1; i >= 0; i--)
+    			stack.push(t.children.get(i));
+    		return t;
+    	}
+    }
+    
+    private static class PostOrderIterator<T> implements Iterator<Tree<T>> {
+    	private Object[] nodes = new Object[16];
+    	private int[] nextChild = new int[16];
+    	private int size;
+    	
+    	PostOrderIterator(Tree<T> root) {
+    		nodes[size++] = root;
+    	}
+    	
+    	@Override
+    	public boolean hasNext() {
+    		return size > 0;
+    	}
+    	
+    	@Override
+    	@SuppressWarnings("unchecked")
+    	public Tree<T> next() {
+    		if(size == 0)
+    			throw new NoSuchElementException();
+    		while(true) {
+    			int top = size - 1;
+    			Tree<T> t = (Tree<T>) nodes[top];
+    			if(nextChild[top] == t.children.size()) {
+    				nodes[top] = null;
+    				size--;
+    				return t;
+    			}
+    			Tree<T> child = t.children.get(nextChild[top]++);
+    			if(size == nodes.length) {
+    				nodes = Arrays.copyOf(nodes, size * 2);
+    				nextChild = Arrays.copyOf(nextChild, size * 2);
+    			}
+    			nodes[size] = child;
+    			nextChild[size] = 0;
+    			size++;
+    		}
+    	}
+    }
+    
+    private static class BreadthFirstIterator<T> implements Iterator<Tree<T>> {
+    	private final ArrayDeque<Tree<T>> queue = new ArrayDeque<Tree<T>>();
+    	
+    	BreadthFirstIterator(Tree<T> root) {
+    		queue.add(root);
+    	}
+    	
+    	@Override
+    	public boolean hasNext() {
+    		return !queue.isEmpty();
+    	}
+    	
+    	@Override
+    	public Tree<T> next() {
+    		if(queue.isEmpty())
+    			throw new NoSuchElementException();
+    		Tree<T> t = queue.poll();
+    		queue.addAll(t.children);
+    		return t;
+    	}
+    }
+    
+    /**
+     * Returns this node and its descendants one per line, each indented by two spaces
+     * per level below this node. See {@link #write(Appendable, String)} for trees too
+     * large to hold as one string.
+     */
+    @Override
+    public String toString() {
+    	StringBuilder sb = new StringBuilder();
+    	try {
+    		write(sb, "  ");
+    	} catch (IOException e) {
+    		throw new UncheckedIOException(e);
+    	}
+    	sb.setLength(sb.length() - 1);
+    	return sb.toString();
+    }
+    
+    /**
+     * Writes this node and its descendants in pre-order, one line per node ending in
+     * {@code '\n'}, each indented by {@code indent} once per level below this node.
+     * With a tab as the indent this is the outline format {@link OutlineParser} reads,
+     * as long as no label contains a line break or a tab. Time and memory stay linear
+     * in the output, however deep the tree.
+     */
+    public void write(Appendable out, String indent) throws IOException {
+    	int unit = indent.length();
+    	char[] indents = new char[unit * 16];
+    	for(int i = 0; i < indents.length; i++)
+    		indents[i] = indent.charAt(i % unit);
+    	ArrayDeque<Tree<T>> pending = new ArrayDeque<Tree<T>>();
+    	int[] depths = new int[16];
+    	pending.push(this);
+    	while(!pending.isEmpty()) {
+    		int depth = depths[pending.size() - 1];
+    		Tree<T> t = pending.pop();
+    		if(depth * unit > indents.length) {
+    			int filled = indents.length;
+    			indents = Arrays.copyOf(indents, Math.max(depth * unit, filled * 2));
+    			for(int i = filled; i < indents.length; i++)
+    				indents[i] = indent.charAt(i % unit);
+    		}
+    		append(out, indents, depth * unit);
+    		out.append(String.valueOf(t.data)).append('\n');
+    		
+    		int top = pending.size();
+    		if(top + t.children.size() > depths.length)
+    			depths = Arrays.copyOf(depths, Math.max(top + t.children.size(), depths.length * 2));
+    		for(int i = t.children.size() - 1; i >= 0; i--) {
+    			depths[pending.size()] = depth + 1;
+    			pending.push(t.children.get(i));
+    		}
+    	}
+    }
+    
+    /*
+     * Writers and builders take the characters directly, without a String per call.
+     */
+    private static void append(Appendable out, char[] chars, int length) throws IOException {
+    	if(length == 0)
+    		return;
+    	if(out instanceof Writer)
+    		((Writer) out).write(chars, 0, length);
+    	else if(out instanceof StringBuilder)
+    		((StringBuilder) out).append(chars, 0, length);
+    	else
+    		out.append(CharBuffer.wrap(chars, 0, length));
+    }
+}
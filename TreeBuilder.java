@@ -0,0 +1,111 @@
+package application;
+
+import java.util.Arrays;
+
+/**
+ * Builds a whole {@link Tree} at once from parent numbers, as exported from a table
+ * of parent/child rows.
+ * <p>
+ * Nodes are numbered from 0 and node {@code i} of the input becomes the node with
+ * handle {@code i}, see {@link Tree#getNode(int)}. The numbers do not have to be in
+ * any order: a parent may come after its children. Building counts the children of
+ * every node first, so each node and child list is allocated once at its final size
+ * and nothing is hashed, which is much faster than adding the nodes one by one.
+ * Children end up in ascending order of their numbers.
+ *
+ * <pre>
+ * TreeBuilder&lt;String&gt; builder = new TreeBuilder&lt;String&gt;(rows);
+ * for(Row row : rows)
+ *     builder.addEdge(row.parent, row.child).setLabel(row.child, row.name);
+ * Tree&lt;String&gt; tree = builder.setLabel(0, "root").build();
+ * </pre>
+ *
+ * @param <T> the type of the labels stored in the tree
+ */
+public class TreeBuilder<T> {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] parents;
+	private Object[] labels;
+	private int size;
+
+	public TreeBuilder() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param expectedNodes the number of nodes to reserve room for
+	 */
+	public TreeBuilder(int expectedNodes) {
+		int capacity = Math.max(expectedNodes, 1);
+		parents = new int[capacity];
+		labels = new Object[capacity];
+		Arrays.fill(parents, -1);
+	}
+
+	/**
+	 * Builds a tree from a parent array in which the root has parent -1.
+	 *
+	 * @param parents the number of the parent of every node
+	 * @param labels  the label of every node
+	 * @throws IllegalArgumentException if the arrays differ in length or do not
+	 *                                  describe a single tree
+	 */
+	public static <T> Tree<T> fromParents(int[] parents, T[] labels) {
+		if(parents.length != labels.length)
+			throw new IllegalArgumentException(parents.length + " parents but " + labels.length + " labels");
+		return Tree.build(parents, labels, parents.length);
+	}
+
+	/**
+	 * Makes one node the parent of another.
+	 *
+	 * @throws IllegalArgumentException if the child already has a parent
+	 */
+	public TreeBuilder<T> addEdge(int parent, int child) {
+		if(parent < 0 || child < 0)
+			throw new IllegalArgumentException("Node numbers must not be negative: " + parent + ", " + child);
+		ensure(Math.max(parent, child));
+		if(parents[child] >= 0)
+			throw new IllegalArgumentException("Node " + child + " has parents " + parents[child] + " and " + parent);
+		parents[child] = parent;
+		return this;
+	}
+
+	public TreeBuilder<T> setLabel(int node, T label) {
+		if(node < 0)
+			throw new IllegalArgumentException("Node numbers must not be negative: " + node);
+		ensure(node);
+		labels[node] = label;
+		return this;
+	}
+
+	/**
+	 * @return the number of nodes so far, one more than the highest node number seen
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Builds the tree. The node without a parent becomes the root; nodes without a
+	 * label are labelled {@code null}. The builder may be used again afterwards.
+	 *
+	 * @throws IllegalArgumentException if the edges do not describe a single tree
+	 */
+	public Tree<T> build() {
+		return Tree.build(parents, labels, size);
+	}
+
+	private void ensure(int node) {
+		if(node >= parents.length) {
+			int capacity = Math.max(node + 1, parents.length + (parents.length >> 1));
+			int old = parents.length;
+			parents = Arrays.copyOf(parents, capacity);
+			labels = Arrays.copyOf(labels, capacity);
+			Arrays.fill(parents, old, capacity, -1);
+		}
+		size = Math.max(size, node + 1);
+	}
+}
@@ -0,0 +1,43 @@
+package application;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes a laid out tree to a file in some image format.
+ * <p>
+ * Exports can take a while for large trees, so exporters report how far they got
+ * and stop with an {@link java.io.InterruptedIOException} when their thread is
+ * interrupted. The layout must not change while it is exported.
+ */
+public interface TreeExporter {
+
+	/**
+	 * Receives the progress of an export, on the exporting thread.
+	 */
+	interface Progress {
+		void update(long done, long total);
+	}
+
+	Progress IGNORED = new Progress() {
+		@Override
+		public void update(long done, long total) {
+		}
+	};
+
+	void export(LayoutResult layout, File file, Progress progress) throws IOException;
+
+	default void export(LayoutResult layout, File file) throws IOException {
+		export(layout, file, IGNORED);
+	}
+
+	/**
+	 * Picks an exporter by file extension: SVG for {@code .svg}, otherwise PNG with
+	 * default settings.
+	 */
+	static TreeExporter forFile(File file) {
+		if(file.getName().toLowerCase().endsWith(".svg"))
+			return new SvgExporter();
+		return new PngExporter();
+	}
+}
@@ -0,0 +1,848 @@
+package application;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tidy tree layout in linear time, following Buchheim, Juenger and Leipert's
+ * improvement of Walker's algorithm.
+ * <p>
+ * Each subtree is placed as close to its left siblings as their contours allow,
+ * parents are centered over their children, and the space gained is distributed
+ * evenly between the subtrees in between. Positions along a level are computed
+ * first; the orientation then decides whether levels become rows or columns.
+ * <p>
+ * Boxes are widened to fit their labels, measured with {@link LabelMetrics}, up to
+ * {@value #MAX_STRETCH} times the configured node width; longer labels are squeezed.
+ * When levels are columns, each column is as wide as its widest box.
+ * <p>
+ * All scratch state lives in primitive arrays indexed by node id and is reused
+ * between calls, so a layout engine should not be shared between threads.
+ * <p>
+ * How a parent's children are arranged depends only on the subtrees below it,
+ * which lets {@link LiveLayout} re-arrange just the ancestors of changed nodes.
+ * Arranging a parent also adjusts threads and modifiers deeper in its subtree, so
+ * while recording, those changes are logged per parent and undone before the
+ * parent is arranged again.
+ */
+public class TreeLayout {
+
+	private static final int NONE = LayoutResult.NONE;
+	private static final int FREE = LayoutResult.FREE;
+	private static final double MAX_STRETCH = 4;
+	// How far, in pixels, a box may be from the origin or the reach and still be at it.
+	private static final double END_TOLERANCE = 1e-6;
+
+	private final Orientation orientation;
+	private final double nodeWidth;
+	private final double nodeHeight;
+	private final double siblingGap;
+	private final double levelGap;
+	private final double marginX;
+	private final double marginY;
+	private final LabelMetrics metrics;
+
+	private LayoutResult result;
+	private Object[] nodes = new Object[0];
+	// The handle of each node while an IndexedTree is collected.
+	private int[] handles = new int[0];
+	private int[] index = new int[0];
+	private int[] thread = new int[0];
+	private int[] ancestor = new int[0];
+	private double[] prelim = new double[0];
+	private double[] mod = new double[0];
+	private double[] shift = new double[0];
+	private double[] change = new double[0];
+	private double[] midpoint = new double[0];
+	private double[] offset = new double[0];
+	private int levels;
+	// The size of every level across, and where it starts, as of the last fill.
+	private double[] levelExtent = new double[0];
+	private double[] levelStart = new double[0];
+	private int measuredLevels;
+	private boolean levelsChanged;
+	// The number of nodes on each level, kept up to date by addNode and free.
+	private int[] levelNodes = new int[0];
+	// The smallest and largest position along a level since positions were last normalized.
+	private double origin;
+	private double reach;
+	// Whether a node at the origin or the reach was removed, resized or moved inward.
+	private boolean endsChanged;
+
+	// Undo log of arrange(v) for every v, newest entry first, kept while recording.
+	private boolean recording;
+	private int[] logHead = new int[0];
+	private int[] logNode = new int[0];
+	private int[] logThread = new int[0];
+	private int[] logAncestor = new int[0];
+	private double[] logMod = new double[0];
+	private int[] logNext = new int[0];
+	private int logSize;
+	private int logFree = NONE;
+
+	// Nodes whose prelim or mod may have changed during an update, and those that moved.
+	private boolean updating;
+	private int[] touched = new int[16];
+	private int touchedCount;
+	private boolean[] marked = new boolean[0];
+	private double[] position = new double[0];
+	private int[] moved = new int[16];
+	private int movedCount;
+
+	/**
+	 * Creates a layout engine that measures labels in {@link LabelMetrics#DEFAULT}.
+	 */
+	public TreeLayout(Orientation orientation, double nodeWidth, double nodeHeight,
+			double siblingGap, double levelGap, double marginX, double marginY) {
+		this(orientation, nodeWidth, nodeHeight, siblingGap, levelGap, marginX, marginY, LabelMetrics.DEFAULT);
+	}
+
+	/**
+	 * @param orientation whether levels are rows or columns
+	 * @param nodeWidth   the smallest width of a node box
+	 * @param nodeHeight  the height of a node box
+	 * @param siblingGap  the space between neighbouring boxes on the same level
+	 * @param levelGap    the space between two levels
+	 * @param marginX     the space left of and right of the tree
+	 * @param marginY     the space above and below the tree
+	 * @param metrics     measures the labels that boxes are sized to
+	 */
+	public TreeLayout(Orientation orientation, double nodeWidth, double nodeHeight,
+			double siblingGap, double levelGap, double marginX, double marginY, LabelMetrics metrics) {
+		this.orientation = orientation;
+		this.nodeWidth = nodeWidth;
+		this.nodeHeight = nodeHeight;
+		this.siblingGap = siblingGap;
+		this.levelGap = levelGap;
+		this.marginX = marginX;
+		this.marginY = marginY;
+		this.metrics = metrics;
+	}
+
+	public LayoutResult layout(Tree<String> tree) {
+		return layout(tree, new LayoutResult());
+	}
+
+	/**
+	 * Lays out a tree into an existing result, reusing its arrays where possible.
+	 *
+	 * @param  result the result to refill, or {@code null} to create a new one
+	 * @return        the filled result
+	 */
+	public LayoutResult layout(Tree<String> tree, LayoutResult result) {
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.LAYOUT);
+		if(result == null)
+			result = new LayoutResult();
+		this.result = result;
+		collect(tree);
+		return finish(span);
+	}
+
+	public LayoutResult layout(IndexedTree<String> tree) {
+		return layout(tree, new LayoutResult());
+	}
+
+	/**
+	 * Lays out a tree read through handles, such as a {@link CompactTree}, into an
+	 * existing result. Node ids of the result are not the handles of the tree.
+	 *
+	 * @param  result the result to refill, or {@code null} to create a new one
+	 * @return        the filled result
+	 */
+	public LayoutResult layout(IndexedTree<String> tree, LayoutResult result) {
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.LAYOUT);
+		if(result == null)
+			result = new LayoutResult();
+		this.result = result;
+		collect(tree);
+		return finish(span);
+	}
+
+	/*
+	 * Arranges the collected nodes bottom-up and stores their boxes.
+	 */
+	private LayoutResult finish(StageMetrics.Span span) {
+		for(int v = result.size - 1; v >= 0; v--) {
+			if(result.childCount[v] > 0)
+				arrange(v);
+		}
+		placeRoot();
+
+		fill();
+		if(!recording)
+			Arrays.fill(nodes, 0, result.size, null);
+		span.nodes(result.size).end();
+		return result;
+	}
+
+	/*
+	 * Numbers the nodes breadth-first and resets the per-node scratch state.
+	 */
+	private void collect(Tree<String> tree) {
+		begin();
+		nodes[0] = tree;
+		int size = 1;
+		for(int v = 0; v < size; v++) {
+			@SuppressWarnings("unchecked")
+			Tree<String> t = (Tree<String>) nodes[v];
+			List<Tree<String>> children = t.getChildNodes();
+			int count = children.size();
+			int[] list = visit(v, t.getData(), size, count);
+			for(int i = 0; i < count; i++) {
+				nodes[size] = children.get(i);
+				link(v, i, size, list);
+				size++;
+			}
+		}
+		end(size);
+	}
+
+	private void collect(IndexedTree<String> tree) {
+		begin();
+		handles[0] = tree.getRoot();
+		int size = 1;
+		for(int v = 0; v < size; v++) {
+			int node = handles[v];
+			int first = tree.getFirstChild(node);
+			int count = 0;
+			for(int c = first; c != IndexedTree.NO_NODE; c = tree.getNextSibling(c))
+				count++;
+			int[] list = visit(v, tree.getData(node), size, count);
+			int i = 0;
+			for(int c = first; c != IndexedTree.NO_NODE; c = tree.getNextSibling(c)) {
+				handles[size] = c;
+				link(v, i++, size, list);
+				size++;
+			}
+		}
+		end(size);
+	}
+
+	private void begin() {
+		result.orientation = orientation;
+		result.metrics = metrics;
+		levels = 0;
+		ensureCapacity(1);
+		result.parent[0] = NONE;
+		result.depth[0] = 0;
+		index[0] = 0;
+	}
+
+	/*
+	 * Records a node and makes room for its children, which get the ids from size on.
+	 */
+	private int[] visit(int v, String label, int size, int count) {
+		ensureCapacity(size + count);
+		// Child lists of leaves are kept, to be reused by a later layout.
+		int[] list = result.children[v];
+		if(count > 0 && (list == null || list.length < count))
+			list = result.children[v] = new int[count];
+		result.childCount[v] = count;
+		result.labels[v] = label;
+		size(v);
+		levels = Math.max(levels, result.depth[v] + 1);
+		return list;
+	}
+
+	private void link(int v, int i, int child, int[] list) {
+		result.parent[child] = v;
+		result.depth[child] = result.depth[v] + 1;
+		index[child] = i;
+		list[i] = child;
+	}
+
+	private void end(int size) {
+		result.size = size;
+		result.nodeCount = size;
+
+		Arrays.fill(thread, 0, size, NONE);
+		Arrays.fill(mod, 0, size, 0);
+		Arrays.fill(shift, 0, size, 0);
+		Arrays.fill(change, 0, size, 0);
+		for(int v = 0; v < size; v++)
+			ancestor[v] = v;
+		if(recording) {
+			Arrays.fill(logHead, 0, size, NONE);
+			Arrays.fill(marked, 0, size, false);
+			logSize = 0;
+			logFree = NONE;
+		}
+	}
+
+	private void ensureCapacity(int capacity) {
+		result.ensureCapacity(capacity);
+		if(capacity <= prelim.length)
+			return;
+		capacity = Math.max(capacity, prelim.length * 2);
+		nodes = Arrays.copyOf(nodes, capacity);
+		handles = Arrays.copyOf(handles, capacity);
+		index = Arrays.copyOf(index, capacity);
+		thread = Arrays.copyOf(thread, capacity);
+		ancestor = Arrays.copyOf(ancestor, capacity);
+		prelim = Arrays.copyOf(prelim, capacity);
+		mod = Arrays.copyOf(mod, capacity);
+		shift = Arrays.copyOf(shift, capacity);
+		change = Arrays.copyOf(change, capacity);
+		midpoint = Arrays.copyOf(midpoint, capacity);
+		offset = Arrays.copyOf(offset, capacity);
+		if(recording) {
+			logHead = Arrays.copyOf(logHead, capacity);
+			marked = Arrays.copyOf(marked, capacity);
+			position = Arrays.copyOf(position, capacity);
+		}
+	}
+
+	/*
+	 * Places the children of v next to each other, assuming every child has already
+	 * arranged its own children. Children are processed in reverse breadth-first
+	 * order, which guarantees that.
+	 */
+	private void arrange(int v) {
+		int[] children = result.children[v];
+		int count = result.childCount[v];
+		int defaultAncestor = children[0];
+		for(int i = 0; i < count; i++) {
+			place(children[i]);
+			defaultAncestor = apportion(v, children[i], defaultAncestor);
+		}
+		executeShifts(v);
+		midpoint[v] = (prelim[children[0]] + prelim[children[count - 1]]) / 2;
+	}
+
+	/*
+	 * Puts a node next to its left sibling, or centers it over its own children.
+	 */
+	private void place(int v) {
+		double center = result.childCount[v] > 0 ? midpoint[v] : 0;
+		int left = leftSibling(v);
+		if(left != NONE) {
+			prelim[v] = prelim[left] + distance(left, v);
+			mod[v] = result.childCount[v] > 0 ? prelim[v] - center : 0;
+		}
+		else {
+			prelim[v] = center;
+			mod[v] = 0;
+		}
+	}
+
+	private void placeRoot() {
+		prelim[0] = result.childCount[0] > 0 ? midpoint[0] : 0;
+		mod[0] = 0;
+	}
+
+	private int apportion(int owner, int v, int defaultAncestor) {
+		int w = leftSibling(v);
+		if(w == NONE)
+			return defaultAncestor;
+
+		int vir = v;
+		int vor = v;
+		int vil = w;
+		int vol = result.children[owner][0];
+		double sir = mod[vir];
+		double sor = mod[vor];
+		double sil = mod[vil];
+		double sol = mod[vol];
+
+		while(nextRight(vil) != NONE && nextLeft(vir) != NONE) {
+			vil = nextRight(vil);
+			vir = nextLeft(vir);
+			vol = nextLeft(vol);
+			vor = nextRight(vor);
+			record(owner, vor);
+			ancestor[vor] = v;
+			double gap = (prelim[vil] + sil) - (prelim[vir] + sir) + distance(vil, vir);
+			if(gap > 0) {
+				moveSubtree(greatestDistinctAncestor(vil, v, defaultAncestor), v, gap);
+				sir += gap;
+				sor += gap;
+			}
+			sil += mod[vil];
+			sir += mod[vir];
+			sol += mod[vol];
+			sor += mod[vor];
+		}
+
+		if(nextRight(vil) != NONE && nextRight(vor) == NONE) {
+			record(owner, vor);
+			thread[vor] = nextRight(vil);
+			mod[vor] += sil - sor;
+		}
+		if(nextLeft(vir) != NONE && nextLeft(vol) == NONE) {
+			record(owner, vol);
+			thread[vol] = nextLeft(vir);
+			mod[vol] += sir - sol;
+			defaultAncestor = v;
+		}
+		return defaultAncestor;
+	}
+
+	private void moveSubtree(int wl, int wr, double amount) {
+		int subtrees = index[wr] - index[wl];
+		change[wr] -= amount / subtrees;
+		shift[wr] += amount;
+		change[wl] += amount / subtrees;
+		prelim[wr] += amount;
+		mod[wr] += amount;
+	}
+
+	private void executeShifts(int v) {
+		double totalShift = 0;
+		double totalChange = 0;
+		int[] children = result.children[v];
+		for(int i = result.childCount[v] - 1; i >= 0; i--) {
+			int w = children[i];
+			prelim[w] += totalShift;
+			mod[w] += totalShift;
+			totalChange += change[w];
+			totalShift += shift[w] + totalChange;
+		}
+	}
+
+	private int greatestDistinctAncestor(int vil, int v, int defaultAncestor) {
+		int a = ancestor[vil];
+		return result.parent[a] == result.parent[v] ? a : defaultAncestor;
+	}
+
+	private int leftSibling(int v) {
+		return index[v] > 0 ? result.children[result.parent[v]][index[v] - 1] : NONE;
+	}
+
+	private int nextLeft(int v) {
+		return result.childCount[v] > 0 ? result.children[v][0] : thread[v];
+	}
+
+	private int nextRight(int v) {
+		return result.childCount[v] > 0 ? result.children[v][result.childCount[v] - 1] : thread[v];
+	}
+
+	/*
+	 * The distance between the centers of two neighbouring boxes on a level.
+	 */
+	private double distance(int left, int right) {
+		return (breadth(left) + breadth(right)) / 2 + siblingGap;
+	}
+
+	/*
+	 * The size of a box along its level, and across it.
+	 */
+	private double breadth(int v) {
+		return orientation == Orientation.HORIZONTAL ? result.width[v] : result.height[v];
+	}
+
+	private double across(int v) {
+		return orientation == Orientation.HORIZONTAL ? result.height[v] : result.width[v];
+	}
+
+	/*
+	 * Sizes a node's box to its label.
+	 */
+	private void size(int v) {
+		double text = metrics.width(result.labels[v]);
+		result.labelWidth[v] = text;
+		result.width[v] = Math.min(nodeWidth * MAX_STRETCH, Math.max(nodeWidth, text + 2 * LabelMetrics.PADDING));
+		result.height[v] = nodeHeight;
+	}
+
+	/*
+	 * Accumulates the modifiers of every node's ancestors to get final positions,
+	 * then maps positions along a level and level numbers to boxes on the canvas.
+	 * Parents always have lower ids than their children.
+	 */
+	private void fill() {
+		offset[0] = 0;
+		origin = prelim[0] - breadth(0) / 2;
+		reach = prelim[0] + breadth(0) / 2;
+		for(int v = 1; v < result.size; v++) {
+			int p = result.parent[v];
+			if(p == FREE)
+				continue;
+			offset[v] = offset[p] + mod[p];
+			double along = prelim[v] + offset[v];
+			origin = Math.min(origin, along - breadth(v) / 2);
+			reach = Math.max(reach, along + breadth(v) / 2);
+		}
+		endsChanged = false;
+		measureLevels();
+
+		for(int v = 0; v < result.size; v++) {
+			if(result.parent[v] != FREE)
+				setBox(v, boxPosition(v, prelim[v] + offset[v]));
+		}
+		sizeCanvas();
+	}
+
+	private void measureLevels() {
+		if(levelExtent.length < levels) {
+			levelExtent = new double[levels];
+			levelStart = new double[levels];
+		}
+		if(levelNodes.length < levels)
+			levelNodes = new int[levels];
+		Arrays.fill(levelExtent, 0, levels, 0);
+		Arrays.fill(levelNodes, 0, levels, 0);
+		for(int v = 0; v < result.size; v++) {
+			if(result.parent[v] != FREE) {
+				levelExtent[result.depth[v]] = Math.max(levelExtent[result.depth[v]], across(v));
+				levelNodes[result.depth[v]]++;
+			}
+		}
+		double start = orientation == Orientation.HORIZONTAL ? marginY : marginX;
+		for(int d = 0; d < levels; d++) {
+			levelStart[d] = start;
+			start += levelExtent[d] + levelGap;
+		}
+		measuredLevels = levels;
+		levelsChanged = false;
+	}
+
+	/*
+	 * Notes whether a node no longer fits into the levels as last measured.
+	 */
+	private void checkLevel(int v) {
+		int d = result.depth[v];
+		if(d >= measuredLevels || across(v) > levelExtent[d])
+			levelsChanged = true;
+	}
+
+	/*
+	 * Notes whether a level may get narrower once a node is gone or resized. Boxes
+	 * of the smallest size never widen a level, so they are not checked.
+	 */
+	private void checkShrink(int v) {
+		int d = result.depth[v];
+		double smallest = orientation == Orientation.HORIZONTAL ? nodeHeight : nodeWidth;
+		if(d < measuredLevels && across(v) > smallest && across(v) >= levelExtent[d])
+			levelsChanged = true;
+	}
+
+	/*
+	 * Notes whether the levels may get shorter at either end once a node is gone: its
+	 * box, where it was last stored, starts at the origin or ends at the reach. Nodes
+	 * that have not been positioned yet are not at either end.
+	 */
+	private void checkEnds(int v) {
+		if(atOrigin(v) || atReach(v))
+			endsChanged = true;
+	}
+	
+	private boolean atOrigin(int v) {
+		boolean horizontal = orientation == Orientation.HORIZONTAL;
+		double start = horizontal ? result.x[v] : result.y[v];
+		return start <= (horizontal ? marginX : marginY) + END_TOLERANCE;
+	}
+	
+	private boolean atReach(int v) {
+		boolean horizontal = orientation == Orientation.HORIZONTAL;
+		double end = (horizontal ? result.x[v] : result.y[v]) + breadth(v);
+		return end >= reach - origin + (horizontal ? marginX : marginY) - END_TOLERANCE;
+	}
+
+	/*
+	 * Maps the center of a box along its level to the coordinate of its leading edge.
+	 */
+	private double boxPosition(int v, double along) {
+		return along - breadth(v) / 2 - origin + (orientation == Orientation.HORIZONTAL ? marginX : marginY);
+	}
+
+	private void setBox(int v, double along) {
+		double across = levelStart[result.depth[v]];
+		if(orientation == Orientation.HORIZONTAL) {
+			result.x[v] = along;
+			result.y[v] = across;
+		}
+		else {
+			result.x[v] = across;
+			result.y[v] = along;
+		}
+	}
+
+	private void sizeCanvas() {
+		boolean horizontal = orientation == Orientation.HORIZONTAL;
+		double extent = reach - origin;
+		double levelsExtent = measuredLevels == 0 ? 0
+				: levelStart[measuredLevels - 1] + levelExtent[measuredLevels - 1] - (horizontal ? marginY : marginX);
+		result.canvasWidth = (horizontal ? extent : levelsExtent) + 2 * marginX;
+		result.canvasHeight = (horizontal ? levelsExtent : extent) + 2 * marginY;
+	}
+
+	/*
+	 * The operations below are used by LiveLayout, which turns recording on before
+	 * the first layout and then keeps the engine bound to that layout's result.
+	 */
+
+	void setRecording(boolean recording) {
+		this.recording = recording;
+		if(recording) {
+			logHead = Arrays.copyOf(logHead, prelim.length);
+			marked = Arrays.copyOf(marked, prelim.length);
+			position = Arrays.copyOf(position, prelim.length);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	Tree<String> node(int v) {
+		return (Tree<String>) nodes[v];
+	}
+
+	/*
+	 * Appends a leaf to a parent's children. The leaf has no position until the
+	 * next update.
+	 */
+	int addNode(int p, Tree<String> node) {
+		int v = result.size;
+		ensureCapacity(v + 1);
+		result.size = v + 1;
+		result.nodeCount++;
+		nodes[v] = node;
+		result.parent[v] = p;
+		result.depth[v] = result.depth[p] + 1;
+		result.childCount[v] = 0;
+		result.labels[v] = node.getData();
+		size(v);
+		result.x[v] = Double.NaN;
+		result.y[v] = Double.NaN;
+		index[v] = result.childCount[p];
+		result.addChild(p, v);
+
+		thread[v] = NONE;
+		ancestor[v] = v;
+		prelim[v] = 0;
+		mod[v] = 0;
+		shift[v] = 0;
+		change[v] = 0;
+		offset[v] = 0;
+		logHead[v] = NONE;
+		marked[v] = false;
+		levels = Math.max(levels, result.depth[v] + 1);
+		if(levelNodes.length < levels)
+			levelNodes = Arrays.copyOf(levelNodes, levels * 2);
+		levelNodes[result.depth[v]]++;
+		checkLevel(v);
+		return v;
+	}
+
+	/*
+	 * Changes the label of a node and sizes its box to it. The node's position is
+	 * not updated until its parent is arranged again.
+	 *
+	 * @return whether the box changed size
+	 */
+	boolean relabel(int v, String label) {
+		double width = result.width[v];
+		double breadth = breadth(v);
+		boolean atEnd = atOrigin(v) || atReach(v);
+		checkShrink(v);
+		result.labels[v] = label;
+		size(v);
+		checkLevel(v);
+		if(atEnd && breadth(v) != breadth)
+			endsChanged = true;
+		return result.width[v] != width;
+	}
+
+	/*
+	 * Takes a node out of its parent's children. The node and its descendants keep
+	 * their ids until they are freed.
+	 */
+	void detach(int v) {
+		int p = result.parent[v];
+		int[] children = result.children[p];
+		int count = --result.childCount[p];
+		for(int i = index[v]; i < count; i++) {
+			children[i] = children[i + 1];
+			index[children[i]] = i;
+		}
+	}
+
+	void free(int v) {
+		checkShrink(v);
+		checkEnds(v);
+		// The last node of the deepest level takes the level with it.
+		if(--levelNodes[result.depth[v]] == 0 && result.depth[v] == levels - 1) {
+			while(levels > 0 && levelNodes[levels - 1] == 0)
+				levels--;
+			levelsChanged = true;
+		}
+		releaseLog(v);
+		result.parent[v] = FREE;
+		result.labels[v] = null;
+		result.nodeCount--;
+		nodes[v] = null;
+	}
+
+	/*
+	 * Arranges the given parents again. The set must contain every ancestor of each
+	 * of its nodes. Arrangements are undone top-down, the reverse of the order they
+	 * were made in, and redone bottom-up.
+	 */
+	void rearrange(int[] dirty, int count) {
+		long[] byDepth = new long[count];
+		for(int i = 0; i < count; i++)
+			byDepth[i] = (long) result.depth[dirty[i]] << 32 | dirty[i];
+		Arrays.sort(byDepth);
+
+		updating = true;
+		touchedCount = 0;
+		for(int i = 0; i < count; i++)
+			undo((int) byDepth[i]);
+		for(int i = count - 1; i >= 0; i--) {
+			int v = (int) byDepth[i];
+			if(result.parent[v] == FREE)
+				continue;
+			touch(v);
+			int[] children = result.children[v];
+			for(int c = result.childCount[v] - 1; c >= 0; c--) {
+				shift[children[c]] = 0;
+				change[children[c]] = 0;
+				touch(children[c]);
+			}
+			if(result.childCount[v] > 0)
+				arrange(v);
+		}
+		placeRoot();
+		updating = false;
+	}
+
+	/*
+	 * Computes new positions for the nodes that may have moved: the touched nodes,
+	 * and the descendants of nodes whose modifiers changed.
+	 *
+	 * @return the number of nodes that moved, or -1 if a node moved past the start
+	 *         of its level, a level changed size or the levels may have got shorter,
+	 *         in which case every position has to be normalized again
+	 */
+	int reposition() {
+		if(levelsChanged || endsChanged)
+			return -1;
+		for(int i = 0; i < touchedCount; i++) {
+			for(int t = touched[i]; t >= 0 && !marked[t]; t = result.parent[t])
+				marked[t] = true;
+		}
+
+		boolean horizontal = orientation == Orientation.HORIZONTAL;
+		boolean normalized = true;
+		movedCount = 0;
+		int[] stack = new int[16];
+		int size = 0;
+		stack[size++] = 0;
+		while(size > 0) {
+			int v = stack[--size];
+			marked[v] = false;
+			int p = result.parent[v];
+			offset[v] = p == NONE ? 0 : offset[p] + mod[p];
+			double along = prelim[v] + offset[v];
+			if(along - breadth(v) / 2 < origin) {
+				normalized = false;
+				break;
+			}
+			reach = Math.max(reach, along + breadth(v) / 2);
+			double box = boxPosition(v, along);
+			double stored = horizontal ? result.x[v] : result.y[v];
+			if(box > stored && atOrigin(v) || box < stored && atReach(v)) {
+				normalized = false;
+				break;
+			}
+			if(box != stored) {
+				if(movedCount == moved.length)
+					moved = Arrays.copyOf(moved, movedCount * 2);
+				moved[movedCount++] = v;
+				position[v] = box;
+			}
+
+			double base = offset[v] + mod[v];
+			int[] children = result.children[v];
+			for(int i = result.childCount[v] - 1; i >= 0; i--) {
+				int c = children[i];
+				if(marked[c] || offset[c] != base) {
+					if(size == stack.length)
+						stack = Arrays.copyOf(stack, size * 2);
+					stack[size++] = c;
+				}
+			}
+		}
+		if(!normalized) {
+			Arrays.fill(marked, 0, result.size, false);
+			movedCount = 0;
+			return -1;
+		}
+		return movedCount;
+	}
+
+	int[] moved() {
+		return moved;
+	}
+
+	/*
+	 * Stores the positions computed by reposition().
+	 */
+	void commit() {
+		for(int i = 0; i < movedCount; i++)
+			setBox(moved[i], position[moved[i]]);
+		sizeCanvas();
+	}
+
+	/*
+	 * Normalizes and stores the positions of every node.
+	 */
+	void refill() {
+		fill();
+	}
+
+	private void touch(int v) {
+		if(!updating)
+			return;
+		if(touchedCount == touched.length)
+			touched = Arrays.copyOf(touched, touchedCount * 2);
+		touched[touchedCount++] = v;
+	}
+
+	private void record(int owner, int v) {
+		if(!recording)
+			return;
+		int e = logFree;
+		if(e != NONE)
+			logFree = logNext[e];
+		else {
+			if(logSize == logNode.length) {
+				int capacity = Math.max(16, logSize * 2);
+				logNode = Arrays.copyOf(logNode, capacity);
+				logThread = Arrays.copyOf(logThread, capacity);
+				logAncestor = Arrays.copyOf(logAncestor, capacity);
+				logMod = Arrays.copyOf(logMod, capacity);
+				logNext = Arrays.copyOf(logNext, capacity);
+			}
+			e = logSize++;
+		}
+		logNode[e] = v;
+		logThread[e] = thread[v];
+		logAncestor[e] = ancestor[v];
+		logMod[e] = mod[v];
+		logNext[e] = logHead[owner];
+		logHead[owner] = e;
+		touch(v);
+	}
+
+	private void undo(int owner) {
+		for(int e = logHead[owner]; e != NONE; e = logNext[e]) {
+			int v = logNode[e];
+			thread[v] = logThread[e];
+			ancestor[v] = logAncestor[e];
+			mod[v] = logMod[e];
+			touch(v);
+		}
+		releaseLog(owner);
+	}
+
+	private void releaseLog(int owner) {
+		int e = logHead[owner];
+		if(e == NONE)
+			return;
+		int last = e;
+		while(logNext[last] != NONE)
+			last = logNext[last];
+		logNext[last] = logFree;
+		logFree = e;
+		logHead[owner] = NONE;
+	}
+}
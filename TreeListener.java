@@ -0,0 +1,28 @@
+package application;
+
+/**
+ * Receives structural changes of a {@link Tree}. Listeners are registered on any
+ * node and hear about changes anywhere in that node's tree. They are called on the
+ * thread that changed the tree, after the change is complete.
+ * <p>
+ * A subtree that is removed becomes a tree of its own and does not keep the
+ * listeners of the tree it was removed from.
+ */
+public interface TreeListener<T> {
+	
+	/**
+	 * Called after a node was added. The node is either the last child of its
+	 * parent, or the new root of the tree when it has no parent.
+	 */
+	void nodeAdded(Tree<T> node);
+	
+	/**
+	 * Called after a node and its descendants were removed from under a parent.
+	 */
+	void nodeRemoved(Tree<T> parent, Tree<T> node);
+	
+	/**
+	 * Called after the value of a node was replaced.
+	 */
+	void nodeChanged(Tree<T> node);
+}
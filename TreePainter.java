@@ -1,12 +1,31 @@
-package application;
-
-import javafx.scene.canvas.GraphicsContext;
-
-public interface TreePainter {
-	static final int RECT_WIDTH = 70;
-	static final int RECT_HEIGHT = 25;
-	
-	public double offset(int levelWidth);
-	
-	void draw(GraphicsContext gc, Tree<String> tree);
-}
+package application;
+
+import javafx.scene.canvas.GraphicsContext;
+
+public interface TreePainter {
+	static final int RECT_WIDTH = 70;
+	static final int RECT_HEIGHT = 25;
+	
+	/**
+	 * Computes node positions for a tree and sizes the drawing area to fit them.
+	 * The layout is kept and used by {@link #draw} until another tree is laid out,
+	 * so it must be recomputed after the tree changes.
+	 */
+	LayoutResult layout(Tree<String> tree);
+	
+	/**
+	 * Lays out a tree read through handles, such as a {@link CompactTree}, the same
+	 * way. {@link #draw} lays out the tree it is given again.
+	 */
+	LayoutResult layout(IndexedTree<String> tree);
+	
+	double getCanvasWidth();
+	
+	double getCanvasHeight();
+	
+	void draw(TreeSurface surface, Tree<String> tree);
+	
+	default void draw(GraphicsContext gc, Tree<String> tree) {
+		draw(new GraphicsContextSurface(gc), tree);
+	}
+}
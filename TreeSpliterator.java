@@ -0,0 +1,98 @@
+package application;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * Pre-order {@link Spliterator} over the nodes of a tree.
+ * <p>
+ * Pending subtrees are kept on a stack. Splitting hands the subtrees that come first
+ * in pre-order to the new spliterator; when only one subtree is left, its root is
+ * split off on its own and its children are shared between the two halves.
+ */
+class TreeSpliterator<T> implements Spliterator<Tree<T>> {
+
+	private final ArrayDeque<Tree<T>> pending;
+	private Tree<T> head;
+	private long estimate;
+
+	TreeSpliterator(Tree<T> root) {
+		this(null, new ArrayDeque<Tree<T>>(), Long.MAX_VALUE);
+		pending.push(root);
+	}
+
+	private TreeSpliterator(Tree<T> head, ArrayDeque<Tree<T>> pending, long estimate) {
+		this.head = head;
+		this.pending = pending;
+		this.estimate = estimate;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super Tree<T>> action) {
+		if(head != null) {
+			Tree<T> t = head;
+			head = null;
+			action.accept(t);
+			return true;
+		}
+		if(pending.isEmpty())
+			return false;
+
+		Tree<T> t = pending.pop();
+		pushChildren(t);
+		action.accept(t);
+		return true;
+	}
+
+	@Override
+	public void forEachRemaining(Consumer<? super Tree<T>> action) {
+		if(head != null) {
+			action.accept(head);
+			head = null;
+		}
+		while(!pending.isEmpty()) {
+			Tree<T> t = pending.pop();
+			pushChildren(t);
+			action.accept(t);
+		}
+	}
+
+	private void pushChildren(Tree<T> t) {
+		List<Tree<T>> children = t.getChildNodes();
+		for(int i = children.size() - 1; i >= 0; i--)
+			pending.push(children.get(i));
+	}
+
+	@Override
+	public Spliterator<Tree<T>> trySplit() {
+		if(head == null && pending.size() == 1 && pending.peek().getChildNodes().size() > 1) {
+			head = pending.pop();
+			pushChildren(head);
+		}
+		int size = pending.size();
+		if(size < 2)
+			return null;
+
+		// The top of the stack is visited first, so it forms the prefix.
+		ArrayDeque<Tree<T>> prefix = new ArrayDeque<Tree<T>>(size / 2);
+		for(int i = size / 2; i > 0; i--)
+			prefix.addLast(pending.pop());
+		Tree<T> prefixHead = head;
+		head = null;
+
+		estimate >>>= 1;
+		return new TreeSpliterator<T>(prefixHead, prefix, estimate);
+	}
+
+	@Override
+	public long estimateSize() {
+		return estimate;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL;
+	}
+}
@@ -0,0 +1,246 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Shape statistics of a tree gathered in a single traversal: node count, height,
+ * the width of every level, leaf count and the largest number of children of any node.
+ * <p>
+ * The first {@value #SEQUENTIAL_THRESHOLD} nodes are visited on the calling thread.
+ * Larger trees continue on a {@link ForkJoinPool}, where each task splits its pending
+ * subtrees in half every {@value #SEQUENTIAL_THRESHOLD} nodes and forks one half.
+ */
+public class TreeStats {
+
+	static final int SEQUENTIAL_THRESHOLD = 8192;
+
+	private final int nodeCount;
+	private final int leafCount;
+	private final int maxFanOut;
+	private final int[] levelWidths;
+
+	private TreeStats(Counts counts) {
+		this.nodeCount = counts.nodes;
+		this.leafCount = counts.leaves;
+		this.maxFanOut = counts.maxFanOut;
+		this.levelWidths = counts.levelWidths();
+	}
+
+	/**
+	 * Computes the statistics of a tree, using the common pool for large trees.
+	 */
+	public static TreeStats compute(Tree<?> tree) {
+		return compute(tree, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Computes the statistics of a tree, using the given pool for large trees.
+	 */
+	public static <T> TreeStats compute(Tree<T> tree, ForkJoinPool pool) {
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.METRICS);
+		try {
+			StatsTask<T> task = new StatsTask<T>(tree);
+			Counts counts = new Counts();
+			task.walk(counts, SEQUENTIAL_THRESHOLD);
+			if(task.hasPending())
+				counts.merge(pool.invoke(task));
+			span.nodes(counts.nodes);
+			return new TreeStats(counts);
+		} finally {
+			span.end();
+		}
+	}
+
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * @return the number of levels in the tree
+	 */
+	public int getHeight() {
+		return levelWidths.length;
+	}
+
+	/**
+	 * @return the number of nodes on the given level, the root being level 0
+	 */
+	public int getLevelWidth(int level) {
+		return levelWidths[level];
+	}
+
+	public int[] getLevelWidths() {
+		return levelWidths.clone();
+	}
+
+	/**
+	 * @return the highest number of nodes in a level of the tree
+	 */
+	public int getMaxWidth() {
+		int maxWidth = 1;
+		for(int width : levelWidths)
+			maxWidth = Math.max(maxWidth, width);
+		return maxWidth;
+	}
+
+	public int getLeafCount() {
+		return leafCount;
+	}
+
+	public int getMaxFanOut() {
+		return maxFanOut;
+	}
+
+	@Override
+	public String toString() {
+		return "TreeStats[nodes=" + nodeCount + ", height=" + getHeight() + ", maxWidth=" + getMaxWidth()
+				+ ", leaves=" + leafCount + ", maxFanOut=" + maxFanOut + "]";
+	}
+
+	/*
+	 * Level widths cover only the depths a task has seen, [offset, end),
+	 * so tasks deep in a tall tree do not allocate an entry per level above them.
+	 */
+	private static class Counts {
+		int nodes;
+		int leaves;
+		int maxFanOut;
+		int offset;
+		int end;
+		int[] widths = new int[16];
+
+		void count(int depth, int fanOut) {
+			nodes++;
+			if(fanOut == 0)
+				leaves++;
+			else if(fanOut > maxFanOut)
+				maxFanOut = fanOut;
+			cover(depth, depth + 1);
+			widths[depth - offset]++;
+		}
+
+		void merge(Counts other) {
+			nodes += other.nodes;
+			leaves += other.leaves;
+			maxFanOut = Math.max(maxFanOut, other.maxFanOut);
+			if(other.end == 0)
+				return;
+			cover(other.offset, other.end);
+			int shift = other.offset - offset;
+			for(int i = other.end - other.offset - 1; i >= 0; i--)
+				widths[shift + i] += other.widths[i];
+		}
+
+		private void cover(int from, int to) {
+			if(end == 0) {
+				offset = from;
+				end = from;
+			}
+			if(from < offset) {
+				int[] grown = new int[Math.max(end, to) - from + widths.length];
+				System.arraycopy(widths, 0, grown, offset - from, end - offset);
+				widths = grown;
+				offset = from;
+			}
+			if(to - offset > widths.length)
+				widths = Arrays.copyOf(widths, Math.max(to - offset, widths.length * 2));
+			end = Math.max(end, to);
+		}
+
+		int[] levelWidths() {
+			return Arrays.copyOf(widths, end - offset);
+		}
+	}
+
+	/*
+	 * Depth-first walk over a stack of pending subtrees. Depths are absolute, so
+	 * partial counts from different tasks can be added level by level.
+	 */
+	@SuppressWarnings("serial")
+	private static class StatsTask<T> extends RecursiveTask<Counts> {
+		private Object[] nodes;
+		private int[] depths;
+		private int size;
+
+		StatsTask(Tree<T> root) {
+			nodes = new Object[16];
+			depths = new int[16];
+			nodes[0] = root;
+			size = 1;
+		}
+
+		private StatsTask(Object[] nodes, int[] depths, int size) {
+			this.nodes = nodes;
+			this.depths = depths;
+			this.size = size;
+		}
+
+		@Override
+		protected Counts compute() {
+			Counts counts = new Counts();
+			List<StatsTask<T>> forked = new ArrayList<StatsTask<T>>();
+			while(size > 0) {
+				walk(counts, SEQUENTIAL_THRESHOLD);
+				if(size > 1) {
+					StatsTask<T> half = splitOff();
+					half.fork();
+					forked.add(half);
+				}
+			}
+			for(StatsTask<T> task : forked)
+				counts.merge(task.join());
+			return counts;
+		}
+
+		boolean hasPending() {
+			return size > 0;
+		}
+
+		/*
+		 * Visits at most limit nodes, leaving the rest on the stack.
+		 */
+		@SuppressWarnings("unchecked")
+		void walk(Counts counts, int limit) {
+			while(size > 0 && limit-- > 0) {
+				size--;
+				Tree<T> t = (Tree<T>) nodes[size];
+				int depth = depths[size];
+				nodes[size] = null;
+
+				List<Tree<T>> children = t.getChildNodes();
+				int fanOut = children.size();
+				counts.count(depth, fanOut);
+
+				if(size + fanOut > nodes.length) {
+					int capacity = Math.max(size + fanOut, nodes.length * 2);
+					nodes = Arrays.copyOf(nodes, capacity);
+					depths = Arrays.copyOf(depths, capacity);
+				}
+				for(int i = 0; i < fanOut; i++) {
+					nodes[size] = children.get(i);
+					depths[size] = depth + 1;
+					size++;
+				}
+			}
+		}
+
+		/*
+		 * Moves the bottom half of the stack, which holds the shallowest and
+		 * therefore usually largest pending subtrees, into a new task.
+		 */
+		private StatsTask<T> splitOff() {
+			int half = size / 2;
+			Object[] splitNodes = Arrays.copyOf(nodes, half);
+			int[] splitDepths = Arrays.copyOf(depths, half);
+			System.arraycopy(nodes, half, nodes, 0, size - half);
+			System.arraycopy(depths, half, depths, 0, size - half);
+			Arrays.fill(nodes, size - half, size, null);
+			size -= half;
+			return new StatsTask<T>(splitNodes, splitDepths, half);
+		}
+	}
+}
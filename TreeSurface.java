@@ -0,0 +1,46 @@
+package application;
+
+/**
+ * The drawing operations a {@link TreePainter} needs, so the same painting code can
+ * target a JavaFX canvas or an offscreen AWT image.
+ * Surfaces start out drawing in black.
+ */
+public interface TreeSurface {
+	
+	void setLineWidth(double width);
+	
+	/**
+	 * Draws text in the font of the given metrics, which may also be used to
+	 * measure the text.
+	 */
+	void setFont(LabelMetrics metrics);
+	
+	void strokeRect(double x, double y, double width, double height);
+	
+	void strokeLine(double x1, double y1, double x2, double y2);
+	
+	/**
+	 * Strokes {@code count} rectangles, {@code x, y, width, height} each, stored one
+	 * after the other in {@code rects}. A surface may draw them in any order and in
+	 * whatever way is cheapest for it, such as one path for all of them.
+	 */
+	default void strokeRects(double[] rects, int count) {
+		for(int i = 0; i < count * 4; i += 4)
+			strokeRect(rects[i], rects[i + 1], rects[i + 2], rects[i + 3]);
+	}
+	
+	/**
+	 * Strokes {@code count} lines, {@code x1, y1, x2, y2} each, stored one after the
+	 * other in {@code lines}, like {@link #strokeRects}.
+	 */
+	default void strokeLines(double[] lines, int count) {
+		for(int i = 0; i < count * 4; i += 4)
+			strokeLine(lines[i], lines[i + 1], lines[i + 2], lines[i + 3]);
+	}
+	
+	/**
+	 * Draws text with its baseline at {@code y}, squeezing it horizontally if it is
+	 * wider than {@code maxWidth}.
+	 */
+	void fillText(String text, double x, double y, double maxWidth);
+}
@@ -1,21 +1,198 @@
-package application;
-
-import javafx.application.Application;
-
-public abstract class TreeView extends Application {
-	
-	public static int getTreeHeight(Tree<String> tree) {
-		return tree.getHeight(tree, 0, Integer.MIN_VALUE);
-	}
-	
-	public static int getNumberOfTabs(char[] charArray) {
-		int tabNum = 0;
-		for(char c : charArray) {
-			if(c == '\t')
-				tabNum++;
-			else
-				break;
-		}
-		return tabNum;
-	}
-}
+package application;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import javafx.application.Application;
+
+public abstract class TreeView extends Application {
+	
+	/** The largest window a view opens with; larger trees are scrolled. */
+	public static final double MAX_WINDOW_WIDTH = 1200;
+	public static final double MAX_WINDOW_HEIGHT = 600;
+	
+	/** Outline files at least this large are loaded a part at a time. */
+	public static final long LAZY_FILE_SIZE = 64L << 20;
+	private static final int LAZY_INITIAL_NODES = 50000;
+	private static final int LAZY_MAX_NODES = 500000;
+	
+	private static LazyOutline lazyOutline;
+	private OutlineFollower follower;
+	private ExportStatus exportStatus;
+	
+	/**
+	 * @return the status line that shows the progress of exports, which views add
+	 *         below their viewport; it is only created when first asked for, so
+	 *         views can lay out trees without a JavaFX toolkit
+	 */
+	protected ExportStatus getExportStatus() {
+		if(exportStatus == null)
+			exportStatus = new ExportStatus();
+		return exportStatus;
+	}
+	
+	/**
+	 * Queues an export of a laid out tree to where the {@code --output} parameter
+	 * says, {@code Tree.png} by default. Files ending in {@code .svg} are written as
+	 * SVG, anything else as PNG compressed with the {@code --compression} level, 0
+	 * to 9. The layout is copied first, so it may change while the export runs.
+	 * Must be called on the JavaFX application thread.
+	 * 
+	 * @return the queued task
+	 */
+	protected ExportTask export(LayoutResult layout) {
+		Map<String, String> named = getParameters() == null
+				? Collections.<String, String>emptyMap() : getParameters().getNamed();
+		File file = new File(named.containsKey("output") ? named.get("output") : "Tree.png");
+		TreeExporter exporter = TreeExporter.forFile(file);
+		if(exporter instanceof PngExporter && named.containsKey("compression"))
+			exporter = new PngExporter(Integer.parseInt(named.get("compression")),
+					Runtime.getRuntime().availableProcessors());
+		return export(layout, file, exporter);
+	}
+	
+	protected ExportTask export(LayoutResult layout, File file, TreeExporter exporter) {
+		ExportTask task = new ExportTask(layout.copy(), file, exporter);
+		getExportStatus().track(task);
+		return ExportTask.queue(task);
+	}
+	
+	/**
+	 * Starts following the outline named by the {@code --follow} parameter, or
+	 * standard input for {@code --follow=-}, see {@link OutlineFollower}. Must be
+	 * called on the JavaFX application thread.
+	 * 
+	 * @return the tree that grows as lines arrive, or {@code null} if there is no
+	 *         {@code --follow} parameter or the file could not be opened
+	 */
+	protected Tree<String> follow() {
+		String source = getParameters() == null ? null : getParameters().getNamed().get("follow");
+		if(source == null)
+			return null;
+		try {
+			follower = source.equals("-") ? new OutlineFollower(System.in) : new OutlineFollower(Paths.get(source));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		follower.start();
+		return follower.getTree();
+	}
+	
+	/**
+	 * @return whether the view shows an outline that is still growing
+	 */
+	protected boolean isFollowing() {
+		return follower != null;
+	}
+	
+	@Override
+	public void stop() throws Exception {
+		if(follower != null)
+			follower.close();
+	}
+	
+	public static int getTreeHeight(Tree<String> tree) {
+		return tree.getHeight();
+	}
+	
+	/**
+	 * Parses a tab-indented outline file with {@link OutlineParser}.
+	 * 
+	 * @param  file the outline to read
+	 * @return      the parsed tree, or {@code null} if the file could not be read
+	 */
+	public static Tree<String> loadTree(File file) {
+		try {
+			return new OutlineParser().parse(file.toPath());
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes a tree as a tab-indented outline that {@link #loadTree(File)} reads back,
+	 * streaming it rather than building it as one string.
+	 */
+	public static void saveTree(Tree<String> tree, File file) throws IOException {
+		try(Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+			tree.write(out, "\t");
+		}
+	}
+	
+	/**
+	 * Opens an outline or a {@link TreeSnapshot} for viewing. Outlines of at least
+	 * {@link #LAZY_FILE_SIZE} bytes are indexed and only their top is loaded, see
+	 * {@link LazyOutline}.
+	 * 
+	 * @param  file the file to read
+	 * @return      the tree, or {@code null} if the file could not be read
+	 */
+	public static Tree<String> openTree(File file) {
+		try {
+			if(TreeSnapshot.isSnapshot(file.toPath()))
+				return TreeSnapshot.read(file.toPath());
+			if(file.length() < LAZY_FILE_SIZE)
+				return loadTree(file);
+			if(lazyOutline != null)
+				lazyOutline.close();
+			lazyOutline = new LazyOutline(file.toPath(), LAZY_INITIAL_NODES, LAZY_MAX_NODES);
+			return lazyOutline.getTree();
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Makes a tree opened with {@link #openTree(File)} load the children of nodes as
+	 * they come into view, and collapse subtrees that are out of view to make room,
+	 * if the tree was too large to load at once. A click on a node loads more of its
+	 * children as well.
+	 */
+	protected static void loadOnDemand(TreeViewport viewport) {
+		final LazyOutline outline = lazyOutline;
+		if(outline == null)
+			return;
+		viewport.setOnNodesShown(new Consumer<List<Tree<String>>>() {
+			@Override
+			public void accept(List<Tree<String>> nodes) {
+				try {
+					outline.show(nodes);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+		viewport.setOnNodeClicked(new Consumer<Tree<String>>() {
+			@Override
+			public void accept(Tree<String> node) {
+				try {
+					outline.expand(node);
+				} catch (IOException e) {
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+	
+	public static int getNumberOfTabs(char[] charArray) {
+		int tabNum = 0;
+		for(char c : charArray) {
+			if(c == '\t')
+				tabNum++;
+			else
+				break;
+		}
+		return tabNum;
+	}
+}
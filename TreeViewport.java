@@ -0,0 +1,383 @@
+package application;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.EventHandler;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.ScrollBar;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.input.ScrollEvent;
+import javafx.scene.input.ZoomEvent;
+import javafx.scene.layout.Region;
+
+/**
+ * A scrollable view of a {@link LayoutResult} that only ever draws what is visible.
+ * <p>
+ * Instead of a canvas as large as the whole tree inside a scroll pane, the canvas
+ * is only as large as the viewport and is redrawn on every scroll. A
+ * {@link LayoutIndex} finds the nodes and lines that intersect the viewport, so the
+ * cost of a frame does not grow with the size of the tree.
+ * <p>
+ * A view of a {@link LiveLayout} follows the edits made to its tree. Edits are
+ * handled once per pulse of the JavaFX thread, and only the parts of the viewport
+ * they touched are repainted. The canvas of a live layout grows and shrinks with the
+ * tree.
+ * <p>
+ * Scrolling with the shortcut key held down, or pinching, zooms around the pointer.
+ * Below {@link LevelOfDetail#DETAIL_SCALE}, small subtrees and runs of small siblings
+ * are drawn as one glyph each, which a click expands.
+ */
+public class TreeViewport extends Region {
+
+	private static final double DIRTY_PADDING = 2;
+	private static final double MIN_SCALE = 1.0 / 64;
+	private static final double MAX_SCALE = 4;
+	// How much one pixel of scrolling zooms.
+	private static final double ZOOM_PER_PIXEL = 1.005;
+
+	private final Canvas canvas = new Canvas();
+	private final ScrollBar hbar = new ScrollBar();
+	private final ScrollBar vbar = new ScrollBar();
+	private final GraphicsContextSurface surface = new GraphicsContextSurface(canvas.getGraphicsContext2D());
+	private final LayoutPainter painter = new LayoutPainter();
+	private LayoutResult layout;
+	private LayoutIndex index;
+	private LiveLayout live;
+	private LevelOfDetail detail;
+	private int layoutCount;
+	private double scale = 1;
+	// Set while the scroll bars are moved together with the scale.
+	private boolean zooming;
+	private Consumer<Tree<String>> onNodeClicked;
+	private Consumer<List<Tree<String>>> onNodesShown;
+	private final List<Tree<String>> shown = new ArrayList<Tree<String>>();
+	private boolean refreshQueued;
+	private long lastEditLatencyNanos;
+	private final Runnable refresh = new Runnable() {
+		@Override
+		public void run() {
+			refresh();
+		}
+	};
+
+	public TreeViewport() {
+		vbar.setOrientation(javafx.geometry.Orientation.VERTICAL);
+		getChildren().addAll(canvas, hbar, vbar);
+
+		ChangeListener<Number> scrolled = new ChangeListener<Number>() {
+			@Override
+			public void changed(ObservableValue<? extends Number> value, Number from, Number to) {
+				if(!zooming)
+					redraw();
+			}
+		};
+		hbar.valueProperty().addListener(scrolled);
+		vbar.valueProperty().addListener(scrolled);
+
+		setOnScroll(new EventHandler<ScrollEvent>() {
+			@Override
+			public void handle(ScrollEvent e) {
+				if(e.isShortcutDown())
+					zoom(Math.pow(ZOOM_PER_PIXEL, e.getDeltaY()), e.getX(), e.getY());
+				else {
+					scroll(hbar, -e.getDeltaX() / scale);
+					scroll(vbar, -e.getDeltaY() / scale);
+				}
+				e.consume();
+			}
+		});
+		setOnZoom(new EventHandler<ZoomEvent>() {
+			@Override
+			public void handle(ZoomEvent e) {
+				zoom(e.getZoomFactor(), e.getX(), e.getY());
+				e.consume();
+			}
+		});
+		setOnMouseClicked(new EventHandler<MouseEvent>() {
+			@Override
+			public void handle(MouseEvent e) {
+				if(layout == null)
+					return;
+				double x = hbar.getValue() + e.getX() / scale;
+				double y = vbar.getValue() + e.getY() / scale;
+				if(LevelOfDetail.applies(scale) && detail.expandAt(x, y)) {
+					redraw();
+					return;
+				}
+				if(live != null && onNodeClicked != null) {
+					int v = nodeAt(x, y);
+					if(v >= 0)
+						onNodeClicked.accept(live.getNode(v));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Shows a layout. The layout must not be refilled while it is shown; call this
+	 * method again after laying out a tree into it.
+	 */
+	public void setLayout(LayoutResult layout) {
+		detach();
+		this.layout = layout;
+		this.index = new LayoutIndex(layout);
+		this.detail = new LevelOfDetail(layout);
+		requestLayout();
+	}
+
+	/**
+	 * Shows a live layout and repaints whenever its tree is edited. The tree must
+	 * be edited on the JavaFX application thread.
+	 */
+	public void setLayout(LiveLayout live) {
+		detach();
+		this.live = live;
+		this.layout = live.getResult();
+		this.index = live.getIndex();
+		this.detail = new LevelOfDetail(layout);
+		this.layoutCount = live.getLayoutCount();
+		live.setOnChange(new Runnable() {
+			@Override
+			public void run() {
+				if(!refreshQueued) {
+					refreshQueued = true;
+					Platform.runLater(refresh);
+				}
+			}
+		});
+		requestLayout();
+	}
+
+	private void detach() {
+		if(live != null)
+			live.setOnChange(null);
+		live = null;
+	}
+
+	/**
+	 * Sets what to do when a node of a live layout is clicked, on the JavaFX
+	 * application thread. Edits it makes to the tree are shown as usual.
+	 */
+	public void setOnNodeClicked(Consumer<Tree<String>> onNodeClicked) {
+		this.onNodeClicked = onNodeClicked;
+	}
+
+	/**
+	 * Sets what to do with the nodes of a live layout that are in view, each time the
+	 * whole view is painted at a scale where nodes are drawn one by one. It is called
+	 * on the JavaFX application thread with a list that is only valid during the call.
+	 * Edits it makes to the tree are shown as usual.
+	 */
+	public void setOnNodesShown(Consumer<List<Tree<String>>> onNodesShown) {
+		this.onNodesShown = onNodesShown;
+	}
+
+	private void nodesShown(final double x, final double y, double width, double height) {
+		final double right = x + width;
+		final double bottom = y + height;
+		shown.clear();
+		index.query(x, y, width, height, new LayoutIndex.Visitor() {
+			@Override
+			public void node(int node) {
+				if(layout.getX(node) <= right && layout.getX(node) + layout.getWidth(node) >= x
+						&& layout.getY(node) <= bottom && layout.getY(node) + layout.getHeight(node) >= y)
+					shown.add(live.getNode(node));
+			}
+
+			@Override
+			public void fan(int parent) {
+			}
+		});
+		onNodesShown.accept(shown);
+		shown.clear();
+	}
+
+	private int nodeAt(final double x, final double y) {
+		final int[] found = { -1 };
+		index.query(x, y, 0, 0, new LayoutIndex.Visitor() {
+			@Override
+			public void node(int node) {
+				if(x >= layout.getX(node) && x <= layout.getX(node) + layout.getWidth(node)
+						&& y >= layout.getY(node) && y <= layout.getY(node) + layout.getHeight(node))
+					found[0] = node;
+			}
+
+			@Override
+			public void fan(int parent) {
+			}
+		});
+		return found[0];
+	}
+
+	public double getScale() {
+		return scale;
+	}
+
+	/**
+	 * Zooms around the center of the viewport.
+	 *
+	 * @param scale the size on screen of one unit of the layout, from 1/64 to 4
+	 */
+	public void setScale(double scale) {
+		zoom(scale / this.scale, canvas.getWidth() / 2, canvas.getHeight() / 2);
+	}
+
+	/*
+	 * Keeps the point of the layout under the given point of the viewport in place.
+	 */
+	private void zoom(double factor, double viewX, double viewY) {
+		double scale = Math.max(MIN_SCALE, Math.min(MAX_SCALE, this.scale * factor));
+		if(scale == this.scale)
+			return;
+		double x = hbar.getValue() + viewX / this.scale;
+		double y = vbar.getValue() + viewY / this.scale;
+		this.scale = scale;
+		zooming = true;
+		try {
+			layoutChildren();
+			scroll(hbar, x - viewX / scale - hbar.getValue());
+			scroll(vbar, y - viewY / scale - vbar.getValue());
+		} finally {
+			zooming = false;
+		}
+		redraw();
+	}
+
+	/**
+	 * @return the time from the first of the last batch of edits until the view was
+	 *         repainted, in nanoseconds
+	 */
+	public long getLastEditLatencyNanos() {
+		return lastEditLatencyNanos;
+	}
+
+	private void refresh() {
+		refreshQueued = false;
+		if(live == null)
+			return;
+		long since = live.getChangedSince();
+		double contentWidth = layout.getCanvasWidth();
+		double contentHeight = layout.getCanvasHeight();
+		DirtyRegion dirty = live.update();
+		index = live.getIndex();
+		detail.invalidate();
+		if(layoutCount != live.getLayoutCount()) {
+			layoutCount = live.getLayoutCount();
+			detail.reset();
+		}
+
+		// Glyphs cover the bounds of whole subtrees, which change with any edit inside them.
+		if(dirty.isAll() || LevelOfDetail.applies(scale) || contentWidth != layout.getCanvasWidth() || contentHeight != layout.getCanvasHeight())
+			layoutChildren();
+		else
+			repaint(dirty);
+		if(since != 0)
+			lastEditLatencyNanos = System.nanoTime() - since;
+	}
+
+	@Override
+	protected void layoutChildren() {
+		double width = getWidth();
+		double height = getHeight();
+		double barWidth = vbar.prefWidth(-1);
+		double barHeight = hbar.prefHeight(-1);
+		// Scroll bars move in layout units, the rest is in pixels.
+		double contentWidth = layout == null ? 0 : layout.getCanvasWidth() * scale;
+		double contentHeight = layout == null ? 0 : layout.getCanvasHeight() * scale;
+
+		// A scroll bar takes space from the other direction, which may then need one too.
+		boolean showH = contentWidth > width;
+		boolean showV = contentHeight > (showH ? height - barHeight : height);
+		showH = contentWidth > (showV ? width - barWidth : width);
+		double viewWidth = Math.max(0, showV ? width - barWidth : width);
+		double viewHeight = Math.max(0, showH ? height - barHeight : height);
+
+		hbar.setVisible(showH);
+		vbar.setVisible(showV);
+		hbar.resizeRelocate(0, viewHeight, viewWidth, barHeight);
+		vbar.resizeRelocate(viewWidth, 0, barWidth, viewHeight);
+		configure(hbar, contentWidth / scale, viewWidth / scale, scale);
+		configure(vbar, contentHeight / scale, viewHeight / scale, scale);
+
+		canvas.setWidth(viewWidth);
+		canvas.setHeight(viewHeight);
+		if(!zooming)
+			redraw();
+	}
+
+	private static void configure(ScrollBar bar, double content, double view, double scale) {
+		double max = Math.max(0, content - view);
+		bar.setMax(max);
+		bar.setVisibleAmount(content <= 0 ? 0 : max * view / content);
+		bar.setUnitIncrement(TreePainter.RECT_HEIGHT / scale);
+		bar.setBlockIncrement(view * 0.9);
+		bar.setValue(Math.min(bar.getValue(), max));
+	}
+
+	private static void scroll(ScrollBar bar, double delta) {
+		bar.setValue(Math.max(bar.getMin(), Math.min(bar.getMax(), bar.getValue() + delta)));
+	}
+
+	/*
+	 * Repaints the dirty rectangles that are visible, each clipped to itself. Lines are
+	 * a little wider than their geometry, so the rectangles are padded.
+	 */
+	private void repaint(DirtyRegion dirty) {
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.DRAW);
+		TreeSurface surface = span.count(this.surface);
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		double x = hbar.getValue();
+		double y = vbar.getValue();
+		double right = x + canvas.getWidth() / scale;
+		double bottom = y + canvas.getHeight() / scale;
+		for(int i = 0; i < dirty.size(); i++) {
+			double x0 = Math.max(x, dirty.getX(i) - DIRTY_PADDING);
+			double y0 = Math.max(y, dirty.getY(i) - DIRTY_PADDING);
+			double x1 = Math.min(right, dirty.getX(i) + dirty.getWidth(i) + DIRTY_PADDING);
+			double y1 = Math.min(bottom, dirty.getY(i) + dirty.getHeight(i) + DIRTY_PADDING);
+			if(x0 >= x1 || y0 >= y1)
+				continue;
+			gc.save();
+			gc.scale(scale, scale);
+			gc.translate(-x, -y);
+			gc.beginPath();
+			gc.rect(x0, y0, x1 - x0, y1 - y0);
+			gc.clip();
+			gc.clearRect(x0, y0, x1 - x0, y1 - y0);
+			painter.paint(surface, layout, index, x0, y0, x1 - x0, y1 - y0);
+			gc.restore();
+		}
+		span.end();
+	}
+
+	private void redraw() {
+		GraphicsContext gc = canvas.getGraphicsContext2D();
+		double width = canvas.getWidth();
+		double height = canvas.getHeight();
+		gc.clearRect(0, 0, width, height);
+		if(layout == null)
+			return;
+
+		StageMetrics.Span span = StageMetrics.begin(StageMetrics.Stage.DRAW);
+		TreeSurface surface = span.count(this.surface);
+		double x = hbar.getValue();
+		double y = vbar.getValue();
+		gc.save();
+		gc.scale(scale, scale);
+		gc.translate(-x, -y);
+		if(LevelOfDetail.applies(scale))
+			detail.paint(surface, scale, x, y, width / scale, height / scale);
+		else
+			painter.paint(surface, layout, index, x, y, width / scale, height / scale);
+		gc.restore();
+		span.end();
+		if(live != null && onNodesShown != null && !LevelOfDetail.applies(scale))
+			nodesShown(x, y, width / scale, height / scale);
+	}
+}
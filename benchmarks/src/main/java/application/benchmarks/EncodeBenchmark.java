@@ -0,0 +1,57 @@
+package application.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.PngWriter;
+
+/**
+ * Encoding a band of pixels with {@link PngWriter}, without drawing or file I/O.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodeBenchmark {
+
+	private static final int HEIGHT = 512;
+
+	@Param({ "1024", "8192" })
+	public int width;
+
+	private int[] pixels;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		// Boxes and lines on white, which compresses like a rendered tree.
+		pixels = new int[width * HEIGHT];
+		for(int i = 0; i < pixels.length; i++) {
+			int x = i % width;
+			int y = i / width;
+			pixels[i] = x % 80 == 0 || y % 55 == 0 ? 0xFF000000 : 0xFFFFFFFF;
+		}
+	}
+
+	@Benchmark
+	public void encode() throws IOException {
+		try(PngWriter png = new PngWriter(OutputStream.nullOutputStream(), width, HEIGHT)) {
+			png.writeRows(pixels, 0, width, HEIGHT);
+		}
+	}
+}
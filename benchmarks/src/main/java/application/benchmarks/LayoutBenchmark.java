@@ -0,0 +1,68 @@
+package application.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.LayoutIndex;
+import application.LayoutResult;
+import application.Orientation;
+import application.Tree;
+import application.TreeLayout;
+import application.TreePainter;
+
+/**
+ * Tidy layout of a whole tree, and building the spatial index over the result.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class LayoutBenchmark {
+
+	@Param({ "CHAIN", "FAN", "BALANCED", "RANDOM" })
+	public TreeShape shape;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int nodes;
+
+	@Param({ "HORIZONTAL", "VERTICAL" })
+	public Orientation orientation;
+
+	private Tree<String> tree;
+	private TreeLayout engine;
+	private LayoutResult result;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		tree = shape.build(nodes);
+		engine = new TreeLayout(orientation, TreePainter.RECT_WIDTH, TreePainter.RECT_HEIGHT, 10, 30, 25, 20);
+		result = engine.layout(tree);
+	}
+
+	/**
+	 * Lays out into the same result every time, as the views do.
+	 */
+	@Benchmark
+	public LayoutResult layout() {
+		return engine.layout(tree, result);
+	}
+
+	@Benchmark
+	public LayoutIndex index() {
+		return new LayoutIndex(result);
+	}
+}
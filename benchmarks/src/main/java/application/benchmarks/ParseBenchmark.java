@@ -0,0 +1,78 @@
+package application.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.OutlineParser;
+import application.Tree;
+import application.TreeSnapshot;
+import application.TreeView;
+
+/**
+ * Parsing of tab-indented outline files, and reading the same trees back from a
+ * {@link TreeSnapshot}. Chains are left out: an outline holds one
+ * tab per level on every line, so a deep chain does not fit on disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class ParseBenchmark {
+
+	@Param({ "FAN", "BALANCED", "RANDOM" })
+	public TreeShape shape;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int nodes;
+
+	private Path outline;
+	private Path snapshot;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		outline = Files.createTempFile("outline-" + shape + "-" + nodes, ".txt");
+		shape.writeOutline(nodes, outline);
+		snapshot = Files.createTempFile("snapshot-" + shape + "-" + nodes, ".tree");
+		TreeSnapshot.write(new OutlineParser().parse(outline), snapshot);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		Files.deleteIfExists(outline);
+		Files.deleteIfExists(snapshot);
+	}
+
+	@Benchmark
+	public Tree<String> parse() throws IOException {
+		return new OutlineParser().parse(outline);
+	}
+
+	@Benchmark
+	public Tree<String> loadTree() {
+		return TreeView.loadTree(new File(outline.toString()));
+	}
+
+	@Benchmark
+	public Tree<String> readSnapshot() throws IOException {
+		return TreeSnapshot.read(snapshot);
+	}
+}
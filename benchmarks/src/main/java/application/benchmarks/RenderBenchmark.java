@@ -0,0 +1,76 @@
+package application.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.HorizontalOrientedTreeView;
+import application.LayoutResult;
+import application.TreeExporter;
+import application.TreePainter;
+import application.VerticalOrientedTreeView;
+
+/**
+ * Exporting a whole laid out tree to a file, through the {@link TreeExporter} that
+ * the views and {@code BatchRenderer} pick for the format. The image of a whole tree
+ * grows with the tree, so sizes stop well below the other benchmarks;
+ * {@link ViewportBenchmark} covers drawing a window of a large tree and
+ * {@link EncodeBenchmark} the PNG encoder on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xmx4g" })
+public class RenderBenchmark {
+
+	@Param({ "CHAIN", "FAN", "BALANCED", "RANDOM" })
+	public TreeShape shape;
+
+	@Param({ "1000", "10000" })
+	public int nodes;
+
+	@Param({ "horizontal", "vertical" })
+	public String orientation;
+
+	@Param({ "png", "svg" })
+	public String format;
+
+	private LayoutResult layout;
+	private TreeExporter exporter;
+	private File image;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		TreePainter painter = orientation.equals("horizontal") ? new HorizontalOrientedTreeView() : new VerticalOrientedTreeView();
+		layout = painter.layout(shape.build(nodes));
+		image = File.createTempFile("tree-" + shape + "-" + nodes, "." + format);
+		exporter = TreeExporter.forFile(image);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		image.delete();
+	}
+
+	@Benchmark
+	public long render() throws IOException {
+		exporter.export(layout, image);
+		return image.length();
+	}
+}
@@ -0,0 +1,139 @@
+package application.benchmarks;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import application.Tree;
+import application.TreeBuilder;
+
+/**
+ * Construction, lookup and traversal of {@link Tree}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Xms8g", "-Xmx8g" })
+public class TreeBenchmark {
+
+	private static final int LOOKUPS = 1024;
+
+	@Param({ "CHAIN", "FAN", "BALANCED", "RANDOM" })
+	public TreeShape shape;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int nodes;
+
+	private int[] parents;
+	private String[] labels;
+	private Tree<String> tree;
+	private String[] keys;
+	private int[] handles;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		parents = shape.parents(nodes);
+		labels = new String[nodes];
+		for(int i = 0; i < nodes; i++)
+			labels[i] = TreeShape.label(i);
+		tree = TreeShape.build(parents);
+		// Labels are created up front, so lookups do not measure string building.
+		keys = new String[LOOKUPS];
+		handles = new int[LOOKUPS];
+		for(int i = 0; i < LOOKUPS; i++) {
+			handles[i] = (int) ((i * 0x9E3779B97L) % nodes);
+			keys[i] = TreeShape.label(handles[i]);
+		}
+		// The label dictionary is built on first use, outside the measurement.
+		tree.getTree(keys[0]);
+	}
+
+	@Benchmark
+	public Tree<String> build() {
+		return TreeShape.build(parents);
+	}
+
+	/**
+	 * Adds the nodes one at a time, with labels made up front like {@link #buildBulk()}.
+	 */
+	@Benchmark
+	public Tree<String> buildPerNode() {
+		Tree<?>[] nodes = new Tree<?>[parents.length];
+		nodes[0] = new Tree<String>(labels[0]);
+		for(int i = 1; i < parents.length; i++) {
+			@SuppressWarnings("unchecked")
+			Tree<String> parent = (Tree<String>) nodes[parents[i]];
+			nodes[i] = parent.addNode(labels[i]);
+		}
+		@SuppressWarnings("unchecked")
+		Tree<String> root = (Tree<String>) nodes[0];
+		return root;
+	}
+
+	@Benchmark
+	public Tree<String> buildBulk() {
+		return TreeBuilder.fromParents(parents, labels);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getTree(Blackhole blackhole) {
+		for(String key : keys)
+			blackhole.consume(tree.getTree(key));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LOOKUPS)
+	public void getNode(Blackhole blackhole) {
+		for(int handle : handles)
+			blackhole.consume(tree.getNode(handle));
+	}
+
+	@Benchmark
+	public int getSubLeafs() {
+		return tree.getSubLeafs(tree.getData()).size();
+	}
+
+	@Benchmark
+	public int maxWidth() {
+		return tree.maxWidth();
+	}
+
+	@Benchmark
+	public int getHeight() {
+		return tree.getHeight(tree, 0, Integer.MIN_VALUE);
+	}
+
+	@Benchmark
+	public void preOrder(Blackhole blackhole) {
+		for(Iterator<Tree<String>> it = tree.preOrderIterator(); it.hasNext();)
+			blackhole.consume(it.next());
+	}
+
+	@Benchmark
+	public void breadthFirst(Blackhole blackhole) {
+		for(Iterator<Tree<String>> it = tree.breadthFirstIterator(); it.hasNext();)
+			blackhole.consume(it.next());
+	}
+
+	@Benchmark
+	public long parallelStream() {
+		return tree.parallelStream().count();
+	}
+}
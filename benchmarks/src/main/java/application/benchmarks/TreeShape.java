@@ -0,0 +1,115 @@
+package application.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import application.Tree;
+
+/**
+ * The synthetic tree shapes the benchmarks run over. A shape is described by a
+ * parent array, where node {@code i} has parent {@code parents[i] < i} and node
+ * {@code 0} is the root. Node {@code i} is labelled {@code "n" + i}.
+ */
+public enum TreeShape {
+
+	/** Every node is the only child of the one before it. */
+	CHAIN {
+		@Override
+		int parent(int node, Random random) {
+			return node - 1;
+		}
+	},
+	/** Every node is a child of the root. */
+	FAN {
+		@Override
+		int parent(int node, Random random) {
+			return 0;
+		}
+	},
+	/** A complete tree where every inner node has {@value #BRANCHING} children. */
+	BALANCED {
+		@Override
+		int parent(int node, Random random) {
+			return (node - 1) / BRANCHING;
+		}
+	},
+	/** A random recursive tree: every node picks its parent uniformly among the earlier nodes. */
+	RANDOM {
+		@Override
+		int parent(int node, Random random) {
+			return random.nextInt(node);
+		}
+	};
+
+	static final int BRANCHING = 4;
+	private static final long SEED = 42L;
+
+	abstract int parent(int node, Random random);
+
+	public int[] parents(int nodes) {
+		Random random = new Random(SEED);
+		int[] parents = new int[nodes];
+		parents[0] = -1;
+		for(int i = 1; i < nodes; i++)
+			parents[i] = parent(i, random);
+		return parents;
+	}
+
+	public static String label(int node) {
+		return "n" + node;
+	}
+
+	public Tree<String> build(int nodes) {
+		return build(parents(nodes));
+	}
+
+	public static Tree<String> build(int[] parents) {
+		List<Tree<String>> nodes = new ArrayList<Tree<String>>(parents.length);
+		nodes.add(new Tree<String>(label(0)));
+		for(int i = 1; i < parents.length; i++)
+			nodes.add(nodes.get(parents[i]).addNode(label(i)));
+		return nodes.get(0);
+	}
+
+	/**
+	 * Writes the shape as a tab-indented outline, children in id order. The file
+	 * holds one tab per level of every line, so deep shapes grow quadratically.
+	 */
+	public void writeOutline(int nodes, Path file) throws IOException {
+		int[] parents = parents(nodes);
+		int[] childCount = new int[nodes + 1];
+		for(int i = 1; i < nodes; i++)
+			childCount[parents[i] + 1]++;
+		for(int i = 1; i <= nodes; i++)
+			childCount[i] += childCount[i - 1];
+		int[] children = new int[nodes];
+		int[] next = childCount.clone();
+		for(int i = 1; i < nodes; i++)
+			children[next[parents[i]]++] = i;
+
+		int[] stack = new int[nodes];
+		int[] depth = new int[nodes];
+		int size = 0;
+		stack[size++] = 0;
+		try(BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+			while(size > 0) {
+				int v = stack[--size];
+				for(int d = 0; d < depth[v]; d++)
+					out.write('\t');
+				out.write(label(v));
+				out.write('\n');
+				// Pushed in reverse so the first child is written first.
+				for(int c = childCount[v + 1] - 1; c >= childCount[v]; c--) {
+					depth[children[c]] = depth[v] + 1;
+					stack[size++] = children[c];
+				}
+			}
+		}
+	}
+}
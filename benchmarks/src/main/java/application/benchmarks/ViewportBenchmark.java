@@ -0,0 +1,88 @@
+package application.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import application.Graphics2DSurface;
+import application.LayoutIndex;
+import application.LayoutPainter;
+import application.LayoutResult;
+import application.Orientation;
+import application.TreeLayout;
+import application.TreePainter;
+import application.TreeSurface;
+import application.TreeView;
+
+/**
+ * Drawing one window of a laid out tree through the spatial index, as the
+ * interactive view does on every scroll. The window is placed over the middle of
+ * the tree, where it is most crowded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "-Djava.awt.headless=true", "-Xms8g", "-Xmx8g" })
+public class ViewportBenchmark {
+
+	private static final int WIDTH = (int) TreeView.MAX_WINDOW_WIDTH;
+	private static final int HEIGHT = (int) TreeView.MAX_WINDOW_HEIGHT;
+	private static final AffineTransform IDENTITY = new AffineTransform();
+
+	@Param({ "CHAIN", "FAN", "BALANCED", "RANDOM" })
+	public TreeShape shape;
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public int nodes;
+
+	private LayoutResult layout;
+	private LayoutIndex index;
+	private final LayoutPainter painter = new LayoutPainter();
+	private Graphics2D graphics;
+	private TreeSurface surface;
+	private double x;
+	private double y;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		layout = new TreeLayout(Orientation.HORIZONTAL, TreePainter.RECT_WIDTH, TreePainter.RECT_HEIGHT,
+				10, 30, 25, 20).layout(shape.build(nodes));
+		index = new LayoutIndex(layout);
+		graphics = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB).createGraphics();
+		graphics.setBackground(Color.WHITE);
+		surface = new Graphics2DSurface(graphics);
+		x = Math.max(0, layout.getCanvasWidth() / 2 - WIDTH / 2);
+		y = Math.max(0, layout.getCanvasHeight() / 2 - HEIGHT / 2);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		graphics.dispose();
+	}
+
+	@Benchmark
+	public void paint() {
+		graphics.setTransform(IDENTITY);
+		graphics.clearRect(0, 0, WIDTH, HEIGHT);
+		graphics.translate(-x, -y);
+		painter.paint(surface, layout, index, x, y, WIDTH, HEIGHT);
+	}
+}
@@ -0,0 +1,217 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Checks that {@link ConcurrentTree} snapshots stay consistent and unchanged while
+ * other threads edit the tree, and that they lay out and parse like a {@link Tree}.
+ */
+public class ConcurrentTreeTest {
+
+	private static final int WRITERS = 4;
+	private static final int READERS = 2;
+	private static final int EDITS_PER_WRITER = 20000;
+
+	@Test
+	public void snapshotIgnoresLaterEdits() {
+		ConcurrentTree<String> tree = new ConcurrentTree<String>("root");
+		int a = tree.addNode(0, "a");
+		tree.addNode(a, "a1");
+		tree.addNode(0, "b");
+		ConcurrentTree.Snapshot<String> before = tree.snapshot();
+		String shape = before.toTree().toString();
+
+		tree.addNode(a, "a2");
+		tree.remove(a);
+		tree.addNode(0, "c");
+
+		assertEquals(shape, before.toTree().toString());
+		assertTrue(before.contains(a));
+		assertFalse(tree.snapshot().contains(a));
+		assertEquals(2, tree.snapshot().getChildNodes(0).length);
+	}
+
+	@Test
+	public void batchIsShownAtOnce() {
+		ConcurrentTree<String> tree = new ConcurrentTree<String>("root");
+		tree.beginBatch();
+		int a = tree.addNode(0, "a");
+		tree.addNode(a, "a1");
+		tree.setData(0, "renamed");
+		assertEquals(1, tree.snapshot().size());
+		tree.endBatch();
+
+		ConcurrentTree.Snapshot<String> after = tree.snapshot();
+		assertEquals(3, after.size());
+		assertEquals("renamed", after.getData(0));
+		assertEquals("a1", after.getData(after.getFirstChild(a)));
+	}
+
+	/*
+	 * Writers add nodes under nodes of their own, remove some of them and sometimes
+	 * edit in batches, while readers keep checking the snapshots they take.
+	 */
+	@Test
+	public void readersSeeConsistentSnapshotsWhileWritersEdit() throws InterruptedException {
+		final ConcurrentTree<String> tree = new ConcurrentTree<String>("root");
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		final AtomicBoolean writing = new AtomicBoolean(true);
+		final int[] snapshotsChecked = new int[READERS];
+
+		List<Thread> writers = new ArrayList<Thread>();
+		for(int w = 0; w < WRITERS; w++) {
+			final int seed = w;
+			writers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Random random = new Random(seed);
+					List<Integer> own = new ArrayList<Integer>();
+					own.add(tree.addNode(0, "w" + seed));
+					for(int i = 0; i < EDITS_PER_WRITER; i++) {
+						boolean batch = i % 100 == 0;
+						if(batch)
+							tree.beginBatch();
+						try {
+							int parent = own.get(random.nextInt(own.size()));
+							if(i % 50 == 49 && parent != own.get(0))
+								tree.remove(parent);
+							else
+								own.add(tree.addNode(parent, "w" + seed + "-" + i));
+						} catch (IllegalArgumentException e) {
+							// The parent is in a subtree removed earlier.
+						} finally {
+							if(batch)
+								tree.endBatch();
+						}
+					}
+				}
+			}, "writer " + w));
+		}
+		List<Thread> readers = new ArrayList<Thread>();
+		for(int r = 0; r < READERS; r++) {
+			final int reader = r;
+			readers.add(new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						while(writing.get()) {
+							ConcurrentTree.Snapshot<String> snapshot = tree.snapshot();
+							String first = checkSnapshot(snapshot);
+							Thread.yield();
+							assertEquals(first, checkSnapshot(snapshot));
+							snapshotsChecked[reader]++;
+						}
+					} catch (Throwable t) {
+						failure.compareAndSet(null, t);
+					}
+				}
+			}, "reader " + r));
+		}
+
+		for(Thread t : readers)
+			t.start();
+		for(Thread t : writers)
+			t.start();
+		for(Thread t : writers)
+			t.join();
+		writing.set(false);
+		for(Thread t : readers)
+			t.join();
+
+		if(failure.get() != null)
+			throw new AssertionError("A reader saw a broken snapshot", failure.get());
+		for(int checked : snapshotsChecked)
+			assertTrue(checked > 0);
+		checkSnapshot(tree.snapshot());
+	}
+
+	@Test
+	public void laysOutSnapshotLikeItsTree() {
+		ConcurrentTree<String> tree = new ConcurrentTree<String>("root");
+		Random random = new Random(1);
+		for(int i = 1; i < 2000; i++) {
+			int parent = random.nextInt(i);
+			if(tree.snapshot().contains(parent))
+				tree.addNode(parent, "node " + i);
+			else
+				tree.addNode(0, "node " + i);
+			if(i % 300 == 0)
+				tree.remove(random.nextInt(i));
+		}
+		ConcurrentTree.Snapshot<String> snapshot = tree.snapshot();
+
+		LayoutResult direct = newEngine().layout(snapshot);
+		LayoutResult copied = newEngine().layout(snapshot.toTree());
+
+		assertEquals(copied.size(), direct.size());
+		for(int v = 0; v < copied.size(); v++) {
+			assertEquals(copied.getLabel(v), direct.getLabel(v));
+			assertEquals(copied.getParent(v), direct.getParent(v));
+			assertEquals(copied.getX(v), direct.getX(v), 0);
+			assertEquals(copied.getY(v), direct.getY(v), 0);
+			assertEquals(copied.getWidth(v), direct.getWidth(v), 0);
+		}
+		assertEquals(copied.getCanvasWidth(), direct.getCanvasWidth(), 0);
+		assertEquals(copied.getCanvasHeight(), direct.getCanvasHeight(), 0);
+	}
+
+	@Test
+	public void parsesLinesLikeATree() {
+		String[] lines = { "\tstray", "root", "\ta", "\t\ta1", "\t\t\ta11", "\tb", "\t\t\t\tdeep",
+				"\tc", "\tin\tner", "renamed root", "\t\tafter" };
+		OutlineParser treeParser = new OutlineParser();
+		ConcurrentTree<String> concurrent = new ConcurrentTree<String>("");
+		OutlineParser concurrentParser = new OutlineParser(concurrent);
+		for(String line : lines) {
+			treeParser.accept(line);
+			concurrentParser.accept(line);
+		}
+		assertEquals(treeParser.getTree().toString(), concurrent.snapshot().toTree().toString());
+	}
+
+	private static TreeLayout newEngine() {
+		return new TreeLayout(Orientation.VERTICAL, TreePainter.RECT_WIDTH, TreePainter.RECT_HEIGHT, 10, 30, 25, 20);
+	}
+
+	/*
+	 * Walks the snapshot from the root, checks that every node reached is linked to
+	 * its parent and that exactly the nodes it contains are reached, and returns the
+	 * walk for comparing with a later one.
+	 */
+	private static String checkSnapshot(ConcurrentTree.Snapshot<String> snapshot) {
+		int size = snapshot.size();
+		int contained = 0;
+		for(int n = 0; n < size; n++) {
+			if(snapshot.contains(n))
+				contained++;
+		}
+		StringBuilder walk = new StringBuilder();
+		int reached = 0;
+		int[] stack = new int[size];
+		int top = 0;
+		stack[top++] = snapshot.getRoot();
+		while(top > 0) {
+			int node = stack[--top];
+			reached++;
+			assertTrue("Walk reached more nodes than the snapshot has", reached <= contained);
+			walk.append(node).append(' ').append(snapshot.getData(node)).append('\n');
+			for(int c = snapshot.getFirstChild(node); c != IndexedTree.NO_NODE; c = snapshot.getNextSibling(c)) {
+				assertTrue(snapshot.contains(c));
+				assertEquals(node, snapshot.getParent(c));
+				stack[top++] = c;
+			}
+		}
+		assertEquals(contained, reached);
+		return walk.toString();
+	}
+}
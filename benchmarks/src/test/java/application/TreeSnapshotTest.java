@@ -0,0 +1,134 @@
+package application;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Writes trees with {@link TreeSnapshot} and checks that reading them back gives the
+ * same tree, and that damaged files are rejected.
+ */
+public class TreeSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void roundTripsNullLabels() throws IOException {
+		Tree<String> tree = new Tree<String>(null);
+		tree.addNode("a").addNode(null);
+		tree.addNode(null);
+		assertRoundTrip(tree);
+	}
+
+	@Test
+	public void roundTripsTabsAndSpaces() throws IOException {
+		Tree<String> tree = new Tree<String>("root");
+		Tree<String> child = tree.addNode("\tleading tab");
+		child.addNode("inner\ttab");
+		child.addNode("  two spaces  ");
+		tree.addNode("");
+		assertRoundTrip(tree);
+	}
+
+	@Test
+	public void roundTripsNonAsciiText() throws IOException {
+		Tree<String> tree = new Tree<String>("Wurzel äöü ß");
+		tree.addNode("日本語").addNode("emoji 🌳");
+		tree.addNode("Ελληνικά").addNode("日本語");
+		assertRoundTrip(tree);
+	}
+
+	@Test
+	public void roundTripsRepeatedLabels() throws IOException {
+		Tree<String> tree = new Tree<String>("x");
+		for(int i = 0; i < 100; i++)
+			tree.addNode(i % 2 == 0 ? "x" : "y").addNode("x");
+		assertRoundTrip(tree);
+	}
+
+	/*
+	 * Compared node by node: the indentation of toString() grows with the square of
+	 * the depth.
+	 */
+	@Test
+	public void roundTripsDeepChain() throws IOException {
+		Tree<String> tree = new Tree<String>("0");
+		Tree<String> leaf = tree;
+		for(int i = 1; i < 100000; i++)
+			leaf = leaf.addNode(Integer.toString(i));
+		Tree<String> read = writeAndRead(tree);
+		assertEquals(shape(tree), shape(read));
+	}
+
+	@Test
+	public void rejectsCorruptedChecksum() throws IOException {
+		Tree<String> tree = new Tree<String>("root");
+		tree.addNode("child");
+		Path file = folder.newFile().toPath();
+		TreeSnapshot.write(tree, file);
+		byte[] bytes = Files.readAllBytes(file);
+		bytes[bytes.length - 6] ^= 1;
+		Files.write(file, bytes);
+		try {
+			TreeSnapshot.read(file);
+			fail("A damaged snapshot was read");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("checksum"));
+		}
+	}
+
+	@Test
+	public void rejectsTruncatedFile() throws IOException {
+		Tree<String> tree = new Tree<String>("root");
+		tree.addNode("child");
+		Path file = folder.newFile().toPath();
+		TreeSnapshot.write(tree, file);
+		byte[] bytes = Files.readAllBytes(file);
+		Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+		try {
+			TreeSnapshot.read(file);
+			fail("A truncated snapshot was read");
+		} catch (IOException e) {
+			// Expected.
+		}
+	}
+
+	private void assertRoundTrip(Tree<String> tree) throws IOException {
+		Tree<String> read = writeAndRead(tree);
+		assertEquals(tree.toString(), read.toString());
+		assertEquals(shape(tree), shape(read));
+	}
+
+	private Tree<String> writeAndRead(Tree<String> tree) throws IOException {
+		Path file = folder.newFile().toPath();
+		TreeSnapshot.write(tree, file);
+		assertTrue(TreeSnapshot.isSnapshot(file));
+		return TreeSnapshot.read(file);
+	}
+
+	/*
+	 * Every label with its child count, in pre-order, which fixes the whole tree and,
+	 * unlike toString(), tells a null label from the text "null".
+	 */
+	private static String shape(Tree<String> tree) {
+		StringBuilder sb = new StringBuilder();
+		for(Iterator<Tree<String>> it = tree.preOrderIterator(); it.hasNext();) {
+			Tree<String> node = it.next();
+			String label = node.getData();
+			sb.append(label == null ? "<null>" : '"' + label + '"').append(' ')
+					.append(node.getChildNodes().size()).append('\n');
+		}
+		return sb.toString();
+	}
+}